@@ -2,10 +2,16 @@ package com.sims.main;
 
 import com.sims.models.*;
 import com.sims.services.*;
+import com.sims.utils.InputValidator;
+import java.io.File;
+import java.io.IOException;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 
 public class InventoryManagementSystem {
@@ -13,11 +19,15 @@ public class InventoryManagementSystem {
     private static UserManager userManager;
     private static User currentUser;
     final private static Scanner scanner = new Scanner(System.in);
+    private static final int SEARCH_RESULT_LIMIT = 50;
+    private static final int TRANSACTION_LOG_LIMIT = 20;
+    private static final DateTimeFormatter AUDIT_TIMESTAMP = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
     
     public static void main(String[] args) {
         System.out.println("=== Smart Inventory Management System (SIMS) ===");
         
         inventoryManager = new InventoryManager();
+        NotificationService.subscribe(inventoryManager);
         userManager = new UserManager();
         
         if (userManager.getAllUsers().isEmpty()) {
@@ -41,8 +51,11 @@ public class InventoryManagementSystem {
         String backupName = "auto_backup_" + 
             LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss"));
         
-        if (ExportUtils.createBackup(backupName)) {
-            System.out.println("Automatic backup created: " + backupName);
+        try {
+            BackupService.BackupResult result = BackupService.createBackup(backupName);
+            System.out.println("Automatic backup created: " + result.getBackup().getName());
+        } catch (IOException e) {
+            System.err.println("Error creating backup: " + e.getMessage());
         }
     }
     
@@ -136,7 +149,8 @@ public class InventoryManagementSystem {
             System.out.println("2. View All Items");
             System.out.println("3. Update Item");
             System.out.println("4. Delete Item");
-            System.out.println("5. Back to Main Menu");
+            System.out.println("5. Adjust Stock");
+            System.out.println("6. Back to Main Menu");
             System.out.print("Choice: ");
             
             int choice = getIntInput();
@@ -145,7 +159,8 @@ public class InventoryManagementSystem {
                 case 2 -> viewAllItems();
                 case 3 -> updateItem();
                 case 4 -> deleteItem();
-                case 5 -> {
+                case 5 -> adjustStock();
+                case 6 -> {
                     return;
                 }
                 default -> System.out.println("Invalid choice! Please try again.");
@@ -194,7 +209,7 @@ public class InventoryManagementSystem {
                 System.out.println("Expiry Date: Not set");
             }
             
-            logTransaction("ADD_ITEM", "Added item: " + name + " (ID: " + item.getId() + ")");
+            logTransaction("ADD_ITEM", item.getId(), "Added item: " + name + " (ID: " + item.getId() + ")");
         } else {
             System.out.println("Failed to add item!");
         }
@@ -220,7 +235,7 @@ public class InventoryManagementSystem {
             if (item.getQuantity() <= item.getLowStockThreshold()) {
                 status = "LOW STOCK";
             }
-            if (item.isExpiring()) {
+            if (item.isExpiring(AlertManager.getExpiryWarningDays())) {
                 status += " EXPIRING";
             }
             
@@ -248,26 +263,43 @@ public class InventoryManagementSystem {
         System.out.println("Leave blank to keep current value");
         
         System.out.print("New quantity (" + item.getQuantity() + "): ");
-        String qtyStr = scanner.nextLine();
-        if (!qtyStr.isEmpty()) {
-            item.setQuantity(Integer.parseInt(qtyStr));
+        String qtyStr = scanner.nextLine().trim();
+        if (!qtyStr.isEmpty() && !InputValidator.isValidInteger(qtyStr)) {
+            System.out.println("Invalid quantity; item not changed.");
+            return;
         }
         
         System.out.print("New price (" + item.getPrice() + "): ");
-        String priceStr = scanner.nextLine();
-        if (!priceStr.isEmpty()) {
-            item.setPrice(Double.parseDouble(priceStr));
+        String priceStr = scanner.nextLine().trim();
+        if (!priceStr.isEmpty() && (!InputValidator.isValidNumber(priceStr)
+                || !Double.isFinite(Double.parseDouble(priceStr)) || Double.parseDouble(priceStr) < 0)) {
+            System.out.println("Invalid price; item not changed.");
+            return;
         }
         
         System.out.print("New description (" + item.getDescription() + "): ");
         String desc = scanner.nextLine();
+        
+        // Quantity goes through the atomic stock API, so it cannot undo a
+        // concurrent pick or reservation or drop below what is reserved.
+        if (!qtyStr.isEmpty()) {
+            try {
+                inventoryManager.setQuantity(id, Integer.parseInt(qtyStr), currentUser.getUsername());
+            } catch (IllegalArgumentException | IllegalStateException e) {
+                System.out.println("Quantity not changed: " + e.getMessage());
+                return;
+            }
+        }
+        if (!priceStr.isEmpty()) {
+            item.setPrice(Double.parseDouble(priceStr));
+        }
         if (!desc.isEmpty()) {
             item.setDescription(desc);
         }
         
         if (inventoryManager.updateItem(item)) {
             System.out.println("Item updated successfully!");
-            logTransaction("UPDATE_ITEM", "Updated item: " + id);
+            logTransaction("UPDATE_ITEM", id, "Updated item: " + id);
         } else {
             System.out.println("Failed to update item!");
         }
@@ -289,13 +321,44 @@ public class InventoryManagementSystem {
         if (confirm.equalsIgnoreCase("y")) {
             if (inventoryManager.deleteItem(id)) {
                 System.out.println("Item deleted successfully!");
-                logTransaction("DELETE_ITEM", "Deleted item: " + id);
+                logTransaction("DELETE_ITEM", id, "Deleted item: " + id);
             } else {
                 System.out.println("Failed to delete item!");
             }
         }
     }
     
+    private static void adjustStock() {
+        System.out.print("Enter Item ID or barcode: ");
+        String key = scanner.nextLine().trim();
+        
+        Item item = inventoryManager.getItem(key);
+        if (item == null) {
+            item = inventoryManager.getItemByBarcode(key);
+        }
+        if (item == null) {
+            System.out.println("Item not found!");
+            return;
+        }
+        
+        System.out.println("Current item: " + item.getName() + " (Qty: " + item.getQuantity()
+            + ", Reserved: " + item.getReserved() + ")");
+        System.out.print("Quantity change (e.g. 25 to receive, -3 to pick): ");
+        String deltaStr = scanner.nextLine().trim();
+        if (!InputValidator.isValidInteger(deltaStr) || Integer.parseInt(deltaStr) == 0) {
+            System.out.println("No change made.");
+            return;
+        }
+        int delta = Integer.parseInt(deltaStr);
+        
+        try {
+            int quantity = inventoryManager.adjustQuantity(item.getId(), delta, currentUser.getUsername());
+            System.out.println("Stock updated. New quantity: " + quantity);
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            System.out.println("Stock not changed: " + e.getMessage());
+        }
+    }
+    
     private static void showCategoryMenu() {
         while (true) {
             System.out.println("\n=== Category Management ===");
@@ -392,7 +455,7 @@ public class InventoryManagementSystem {
         System.out.print("Enter search term: ");
         String term = scanner.nextLine();
         
-        List<Item> results = inventoryManager.searchItems(term);
+        List<Item> results = inventoryManager.searchItems(term, SEARCH_RESULT_LIMIT);
         displaySearchResults(results, "name containing '" + term + "'");
     }
     
@@ -457,7 +520,10 @@ public class InventoryManagementSystem {
             System.out.println("3. View Transaction Log");
             System.out.println("4. Low Stock Report");
             System.out.println("5. Expiry Report");
-            System.out.println("6. Back to Main Menu");
+            System.out.println("6. Import from CSV");
+            System.out.println("7. Audit Trail");
+            System.out.println("8. Restore Backup");
+            System.out.println("9. Back to Main Menu");
             System.out.print("Choice: ");
             
             int choice = getIntInput();
@@ -467,7 +533,10 @@ public class InventoryManagementSystem {
                 case 3 -> viewTransactionLog();
                 case 4 -> showLowStockReport();
                 case 5 -> showExpiryReport();
-                case 6 -> {
+                case 6 -> importFromCsv();
+                case 7 -> showAuditTrail();
+                case 8 -> restoreBackup();
+                case 9 -> {
                     return;
                 }
                 default -> System.out.println("Invalid choice! Please try again.");
@@ -476,10 +545,29 @@ public class InventoryManagementSystem {
     }
     
     private static void exportToCsv() {
+        System.out.print("Columns (comma-separated, or press Enter for all): ");
+        String columnsStr = scanner.nextLine().trim();
+        List<ExportUtils.Column> columns = new ArrayList<>();
+        if (columnsStr.isEmpty()) {
+            columns.addAll(Arrays.asList(ExportUtils.Column.values()));
+        } else {
+            for (String name : columnsStr.split(",")) {
+                ExportUtils.Column column = ExportUtils.Column.fromHeader(name);
+                if (column == null) {
+                    System.out.println("Unknown column: " + name.trim());
+                    return;
+                }
+                columns.add(column);
+            }
+        }
+        
+        System.out.print("Compress with gzip? (y/N): ");
+        boolean gzip = scanner.nextLine().trim().equalsIgnoreCase("y");
+        
         String filename = "inventory_export_" + 
-            LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss")) + ".csv";
+            LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss")) + (gzip ? ".csv.gz" : ".csv");
         
-        if (ExportUtils.exportToCSV(inventoryManager.getAllItems(), filename)) {
+        if (ExportUtils.exportToCSV(inventoryManager, filename, gzip, columns)) {
             System.out.println("Inventory exported to: " + filename);
             logTransaction("EXPORT", "Exported inventory to CSV: " + filename);
         } else {
@@ -487,34 +575,234 @@ public class InventoryManagementSystem {
         }
     }
     
+    private static void importFromCsv() {
+        System.out.print("CSV file path: ");
+        String path = scanner.nextLine().trim();
+        if (path.isEmpty()) {
+            System.out.println("Import cancelled.");
+            return;
+        }
+        
+        try {
+            CsvImporter.ImportResult result = CsvImporter.importCSV(inventoryManager, path);
+            System.out.println("Added: " + result.getAdded() + ", Updated: " + result.getUpdated()
+                + ", Failed: " + result.getFailed());
+            for (String error : result.getErrors()) {
+                System.out.println("  " + error);
+            }
+            if (result.getFailed() > result.getErrors().size()) {
+                System.out.println("  ... and " + (result.getFailed() - result.getErrors().size()) + " more");
+            }
+            logTransaction("IMPORT", "Imported inventory from CSV: " + path + " (" + result.getAdded()
+                + " added, " + result.getUpdated() + " updated, " + result.getFailed() + " failed)");
+        } catch (IOException e) {
+            System.out.println("Import failed: " + e.getMessage());
+        }
+    }
+    
     private static void createBackup() {
         String backupName = "backup_" + 
             LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss"));
         
-        if (ExportUtils.createBackup(backupName)) {
-            System.out.println("Backup created: " + backupName);
+        try {
+            BackupService.BackupResult result = BackupService.createBackup(backupName);
+            backupName = result.getBackup().getName();
+            System.out.printf("Backup created: %s (%d files, %d bytes; %d bytes new)%n", backupName,
+                result.getBackup().getFileCount(), result.getBackup().getTotalBytes(), result.getNewBytes());
             logTransaction("BACKUP", "Created backup: " + backupName);
-        } else {
-            System.out.println("Backup failed!");
+        } catch (IOException e) {
+            System.out.println("Backup failed: " + e.getMessage());
+        }
+    }
+    
+    private static void restoreBackup() {
+        List<BackupService.BackupInfo> backups;
+        try {
+            backups = BackupService.listBackups();
+        } catch (IOException e) {
+            System.out.println("Error reading backups: " + e.getMessage());
+            return;
+        }
+        if (backups.isEmpty()) {
+            System.out.println("No backups found.");
+            return;
+        }
+        
+        System.out.println("\n=== Restore Backup ===");
+        for (int i = 0; i < backups.size(); i++) {
+            BackupService.BackupInfo backup = backups.get(i);
+            System.out.printf("%d. %s  [%s] %d files, %d bytes%n", i + 1, backup.getName(),
+                backup.getCreated().format(AUDIT_TIMESTAMP), backup.getFileCount(), backup.getTotalBytes());
+        }
+        System.out.print("Backup to restore (0 to cancel): ");
+        int choice = getIntInput();
+        if (choice < 1 || choice > backups.size()) {
+            return;
+        }
+        
+        // Restored beside the live data: it is still being written while
+        // the system runs, so it is swapped in by hand after shutting down.
+        String backupName = backups.get(choice - 1).getName();
+        File target = new File("restore", backupName);
+        try {
+            BackupService.restoreBackup(backupName, target);
+            System.out.println("Restored " + backupName + " to " + target.getPath());
+            System.out.println("To use it, exit and replace the data directory with it.");
+            logTransaction("RESTORE", "Restored backup " + backupName + " to " + target.getPath());
+        } catch (IOException e) {
+            System.out.println("Restore failed: " + e.getMessage());
         }
     }
     
     private static void viewTransactionLog() {
-        List<String> logs = ExportUtils.getTransactionLogs();
+        System.out.println("\n=== Transaction Log ===");
+        System.out.println("1. Recent transactions");
+        System.out.println("2. Transactions by user");
+        System.out.println("3. Transactions by date range");
+        System.out.println("4. Follow new transactions");
+        System.out.print("Choice: ");
+        
+        List<String> logs;
+        String title;
+        switch (getIntInput()) {
+            case 1 -> {
+                logs = ExportUtils.getRecentTransactionLogs(TRANSACTION_LOG_LIMIT);
+                title = "Recent Transactions";
+            }
+            case 2 -> {
+                System.out.print("Username: ");
+                String username = scanner.nextLine().trim();
+                logs = ExportUtils.getTransactionLogsByUser(username, TRANSACTION_LOG_LIMIT);
+                title = "Recent Transactions by " + username;
+            }
+            case 3 -> {
+                try {
+                    System.out.print("From (YYYY-MM-DD): ");
+                    LocalDate from = LocalDate.parse(scanner.nextLine().trim());
+                    System.out.print("To (YYYY-MM-DD): ");
+                    LocalDate to = LocalDate.parse(scanner.nextLine().trim());
+                    logs = ExportUtils.getTransactionLogs(from.atStartOfDay(), to.atTime(LocalTime.MAX),
+                                                          TRANSACTION_LOG_LIMIT);
+                    title = "Transactions from " + from + " to " + to;
+                } catch (DateTimeParseException e) {
+                    System.out.println("Invalid date, expected YYYY-MM-DD.");
+                    return;
+                }
+            }
+            case 4 -> {
+                followTransactionLog();
+                return;
+            }
+            default -> {
+                System.out.println("Invalid choice!");
+                return;
+            }
+        }
+        
         if (logs.isEmpty()) {
             System.out.println("No transaction logs found.");
             return;
         }
+        System.out.println("\n=== " + title + " ===");
+        for (String log : logs) {
+            System.out.println(log);
+        }
+        if (logs.size() == TRANSACTION_LOG_LIMIT) {
+            System.out.println("(showing " + TRANSACTION_LOG_LIMIT + " entries)");
+        }
+    }
+    
+    private static void showAuditTrail() {
+        AuditStore auditStore = TransactionLogWriter.getAuditStore();
+        if (auditStore == null) {
+            System.out.println("Audit trail is not available.");
+            return;
+        }
+        
+        System.out.println("\n=== Audit Trail ===");
+        System.out.println("Leave a filter blank to match everything.");
+        AuditStore.Query query = new AuditStore.Query().limit(TRANSACTION_LOG_LIMIT);
+        System.out.print("User: ");
+        String user = scanner.nextLine().trim();
+        if (!user.isEmpty()) {
+            query.user(user);
+        }
+        System.out.print("Action (e.g. ADJUST_STOCK): ");
+        String action = scanner.nextLine().trim().toUpperCase();
+        if (!action.isEmpty()) {
+            query.action(action);
+        }
+        System.out.print("Item ID: ");
+        String itemId = scanner.nextLine().trim();
+        if (!itemId.isEmpty()) {
+            query.itemId(itemId);
+        }
+        try {
+            System.out.print("From (YYYY-MM-DD): ");
+            String from = scanner.nextLine().trim();
+            if (!from.isEmpty()) {
+                query.from(LocalDate.parse(from).atStartOfDay());
+            }
+            System.out.print("To (YYYY-MM-DD): ");
+            String to = scanner.nextLine().trim();
+            if (!to.isEmpty()) {
+                query.to(LocalDate.parse(to).atTime(LocalTime.MAX));
+            }
+        } catch (DateTimeParseException e) {
+            System.out.println("Invalid date, expected YYYY-MM-DD.");
+            return;
+        }
         
-        System.out.println("\n=== Recent Transactions ===");
-        int count = Math.min(20, logs.size()); // Show last 20 transactions
-        for (int i = logs.size() - count; i < logs.size(); i++) {
-            System.out.println(logs.get(i));
+        try {
+            System.out.println("\n" + auditStore.count(query) + " matching transactions");
+            for (Map.Entry<String, Long> entry : auditStore.countBy(query, AuditStore.GroupBy.ACTION).entrySet()) {
+                System.out.printf("  %-16s %d%n", entry.getKey(), entry.getValue());
+            }
+            
+            int offset = 0;
+            while (true) {
+                AuditStore.Page page = auditStore.query(query.offset(offset));
+                for (Transaction transaction : page.getTransactions()) {
+                    System.out.printf("[%s] %s - %s: %s%n", transaction.getTimestamp().format(AUDIT_TIMESTAMP),
+                        transaction.getUserId(), transaction.getAction(), transaction.getDetails());
+                }
+                if (!page.hasMore()) {
+                    break;
+                }
+                System.out.print("Press Enter for older entries, or q to stop: ");
+                if (scanner.nextLine().trim().equalsIgnoreCase("q")) {
+                    break;
+                }
+                offset = page.getNextOffset();
+            }
+        } catch (IOException e) {
+            System.out.println("Error reading audit trail: " + e.getMessage());
+        }
+    }
+    
+    private static void followTransactionLog() {
+        System.out.println("\n=== Live Transactions (press Enter to stop) ===");
+        for (String log : ExportUtils.getRecentTransactionLogs(5)) {
+            System.out.println(log);
+        }
+        
+        AtomicBoolean stopped = new AtomicBoolean();
+        Thread follower = new Thread(() -> ExportUtils.followTransactionLog(System.out::println, stopped::get),
+                                     "sims-log-follow");
+        follower.setDaemon(true);
+        follower.start();
+        
+        scanner.nextLine();
+        stopped.set(true);
+        try {
+            follower.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
     }
     
     private static void showLowStockReport() {
-        List<Item> lowStockItems = AlertManager.getLowStockItems(inventoryManager.getAllItems());
+        List<Item> lowStockItems = AlertManager.getLowStockItems(inventoryManager);
         if (lowStockItems.isEmpty()) {
             System.out.println("No low stock items found.");
             return;
@@ -533,8 +821,8 @@ public class InventoryManagementSystem {
     }
 
     private static void showExpiryReport() {
-        List<Item> expiringItems = AlertManager.getExpiringItems(inventoryManager.getAllItems());
-        List<Item> expiredItems = AlertManager.getExpiredItems(inventoryManager.getAllItems());
+        List<Item> expiringItems = AlertManager.getExpiringItems(inventoryManager);
+        List<Item> expiredItems = AlertManager.getExpiredItems(inventoryManager);
         
         System.out.println("\n=== Expiry Report ===");
         
@@ -554,7 +842,7 @@ public class InventoryManagementSystem {
         }
         
         if (!expiringItems.isEmpty()) {
-            System.out.println("EXPIRING SOON (Within 7 Days):");
+            System.out.printf("EXPIRING SOON (Within %d Days):%n", AlertManager.getExpiryWarningDays());
             System.out.println("-".repeat(50));
             for (Item item : expiringItems) {
                 System.out.printf("%s - %s%n", item.getId(), item.getName());
@@ -718,10 +1006,19 @@ public class InventoryManagementSystem {
         System.out.println("Total Users: " + userManager.getAllUsers().size());
         System.out.println("Current User: " + currentUser.getUsername() + " (" + currentUser.getRole() + ")");
         System.out.println("System Time: " + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")));
+        System.out.printf("Pending Writes: %d inventory changes, %d files queued%n",
+            inventoryManager.getPendingWrites(), PersistenceScheduler.getQueueDepth());
+        System.out.printf("Flush Latency: last %.2f ms, avg %.2f ms, max %.2f ms (%d flushes)%n",
+            PersistenceScheduler.getLastFlushMillis(), PersistenceScheduler.getAverageFlushMillis(),
+            PersistenceScheduler.getMaxFlushMillis(), PersistenceScheduler.getFlushCount());
+        System.out.printf("Transaction Log: %d written, %d dropped, %d queued, %d segments%n",
+            TransactionLogWriter.getWrittenCount(), TransactionLogWriter.getDroppedCount(),
+            TransactionLogWriter.getQueueDepth(), TransactionLogWriter.getSegmentCount());
     }
     
     private static void logout() {
         logTransaction("LOGOUT", "User logged out: " + currentUser.getUsername());
+        PersistenceScheduler.flush();
         currentUser = null;
         System.out.println("Logged out successfully!");
         
@@ -733,10 +1030,12 @@ public class InventoryManagementSystem {
     }
     
     private static void logTransaction(String action, String details) {
-        String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
+        logTransaction(action, null, details);
+    }
+    
+    private static void logTransaction(String action, String itemId, String details) {
         String username = currentUser != null ? currentUser.getUsername() : "SYSTEM";
-        String logEntry = String.format("[%s] %s - %s: %s", timestamp, username, action, details);
-        ExportUtils.logTransaction(logEntry);
+        ExportUtils.logTransaction(username, action, itemId, details);
     }
     
     private static int getIntInput() {
@@ -827,11 +1126,7 @@ public class InventoryManagementSystem {
         System.out.print("Enter supplier name to search: ");
         String searchTerm = scanner.nextLine();
         
-        List<Supplier> allSuppliers = supplierManager.getAllSuppliers();
-        List<Supplier> results = allSuppliers.stream()
-            .filter(s -> s.getName().toLowerCase().contains(searchTerm.toLowerCase()) ||
-                        s.getContactPerson().toLowerCase().contains(searchTerm.toLowerCase()))
-            .collect(Collectors.toList());
+        List<Supplier> results = supplierManager.searchSuppliers(searchTerm, SEARCH_RESULT_LIMIT);
         
         if (results.isEmpty()) {
             System.out.println("No suppliers found matching: " + searchTerm);
@@ -847,15 +1142,14 @@ public class InventoryManagementSystem {
     private static void showAnalyticsDashboard() {
         System.out.println("\n=== Analytics Dashboard ===");
         
-        List<Item> items = inventoryManager.getAllItems();
-        Map<String, Object> analytics = AnalyticsService.getInventoryAnalytics(items);
+        Map<String, Object> analytics = AnalyticsService.getInventoryAnalytics(inventoryManager);
         
         System.out.printf("Total Items: %d%n", analytics.get("totalItems"));
         System.out.printf("Total Value: Rs %.2f%n", analytics.get("totalValue"));
         System.out.printf("Average Price: Rs %.2f%n", analytics.get("averagePrice"));
         System.out.printf("Low Stock Percentage: %.1f%%%n", analytics.get("lowStockPercentage"));
         
-        List<String> recommendations = AnalyticsService.generatePurchaseRecommendations(items);
+        List<String> recommendations = AnalyticsService.generatePurchaseRecommendations(inventoryManager);
         if (!recommendations.isEmpty()) {
             System.out.println("\n=== Purchase Recommendations ===");
             for (String rec : recommendations) {
@@ -870,7 +1164,7 @@ public class InventoryManagementSystem {
     private static void showNotifications() {
         System.out.println("\n=== System Notifications ===");
         
-        NotificationService.generateDailyNotifications(inventoryManager.getAllItems());
+        NotificationService.generateDailyNotifications(inventoryManager);
         
         List<String> notifications = NotificationService.getRecentNotifications(10);
         if (notifications.isEmpty()) {
@@ -895,58 +1189,55 @@ public class InventoryManagementSystem {
         System.out.println("Login Time: " + 
             LocalDateTime.now().format(DateTimeFormatter.ofPattern("MMM dd, yyyy - HH:mm:ss")));
         
-        List<Item> allItems = inventoryManager.getAllItems();
-        
-        InventorySummary summary = calculateInventorySummary(allItems);
+        DashboardSnapshot summary = DashboardService.getSnapshot(inventoryManager);
         
         System.out.println("\n" + "─".repeat(60));
         System.out.println("INVENTORY OVERVIEW");
         System.out.println("─".repeat(60));
         
         // Basic inventory stats
-        System.out.printf("Total Items in System: %d%n", summary.totalItems);
-        System.out.printf("Total Categories: %d%n", summary.totalCategories);
-        System.out.printf("Total Inventory Value: Rs %.2f%n", summary.totalValue);
-        System.out.printf("Average Item Value: Rs %.2f%n", summary.averageItemValue);
+        System.out.printf("Total Items in System: %d%n", summary.getTotalItems());
+        System.out.printf("Total Categories: %d%n", summary.getTotalCategories());
+        System.out.printf("Total Inventory Value: Rs %.2f%n", summary.getTotalValue());
+        System.out.printf("Average Item Value: Rs %.2f%n", summary.getAverageItemValue());
         
         System.out.println("\n" + "─".repeat(60));
         System.out.println("ALERTS & ATTENTION REQUIRED");
         System.out.println("─".repeat(60));
         
-        if (summary.expiredItems > 0) {
+        if (summary.getExpiredItems() > 0) {
             System.out.printf("EXPIRED ITEMS: %d items have expired and need immediate attention!%n", 
-                summary.expiredItems);
+                summary.getExpiredItems());
         }
         
-        if (summary.expiringItems > 0) {
-            System.out.printf("EXPIRING SOON: %d items will expire within 7 days%n", 
-                summary.expiringItems);
+        if (summary.getExpiringItems() > 0) {
+            System.out.printf("EXPIRING SOON: %d items will expire within %d days%n", 
+                summary.getExpiringItems(), summary.getExpiryWarningDays());
         }
         
-        if (summary.lowStockItems > 0) {
-            System.out.printf("LOW STOCK: %d items need restocking%n", summary.lowStockItems);
+        if (summary.getLowStockItems() > 0) {
+            System.out.printf("LOW STOCK: %d items need restocking%n", summary.getLowStockItems());
         }
         
-        if (summary.outOfStockItems > 0) {
-            System.out.printf("OUT OF STOCK: %d items have zero quantity%n", summary.outOfStockItems);
+        if (summary.getOutOfStockItems() > 0) {
+            System.out.printf("OUT OF STOCK: %d items have zero quantity%n", summary.getOutOfStockItems());
         }
         
         // If no alerts
-        if (summary.expiredItems == 0 && summary.expiringItems == 0 && 
-            summary.lowStockItems == 0 && summary.outOfStockItems == 0) {
+        if (summary.getExpiredItems() == 0 && summary.getExpiringItems() == 0 && 
+            summary.getLowStockItems() == 0 && summary.getOutOfStockItems() == 0) {
             System.out.println("All items are in good condition - no immediate alerts!");
         }
         
         // Top categories by value
-        if (!summary.topCategories.isEmpty()) {
+        if (!summary.getTopCategories().isEmpty()) {
             System.out.println("\n" + "─".repeat(60));
             System.out.println("TOP CATEGORIES BY VALUE");
             System.out.println("─".repeat(60));
             
             int rank = 1;
-            for (Map.Entry<String, Double> entry : summary.topCategories.entrySet()) {
+            for (Map.Entry<String, Double> entry : summary.getTopCategories()) {
                 System.out.printf("%d. %s: Rs %.2f%n", rank++, entry.getKey(), entry.getValue());
-                if (rank > 5) break; // Show top 5
             }
         }
         
@@ -956,16 +1247,16 @@ public class InventoryManagementSystem {
         System.out.println("RECOMMENDED ACTIONS");
         System.out.println("─".repeat(60));
         
-        if (summary.lowStockItems > 0) {
+        if (summary.getLowStockItems() > 0) {
             System.out.println("Review low stock items and create purchase orders");
         }
-        if (summary.expiredItems > 0) {
+        if (summary.getExpiredItems() > 0) {
             System.out.println("Remove expired items from inventory");
         }
-        if (summary.expiringItems > 0) {
+        if (summary.getExpiringItems() > 0) {
             System.out.println("Plan promotions for items expiring soon");
         }
-        if (summary.totalItems == 0) {
+        if (summary.getTotalItems() == 0) {
             System.out.println("Add items to start managing your inventory");
         }
         
@@ -974,79 +1265,14 @@ public class InventoryManagementSystem {
         scanner.nextLine();
     }
 
-    private static class InventorySummary {
-        int totalItems;
-        int totalCategories;
-        double totalValue;
-        double averageItemValue;
-        int lowStockItems;
-        int outOfStockItems;
-        int expiringItems;
-        int expiredItems;
-        Map<String, Double> topCategories;
-        
-        InventorySummary() {
-            this.topCategories = new LinkedHashMap<>();
-        }
-    }
-
-    private static InventorySummary calculateInventorySummary(List<Item> items) {
-        InventorySummary summary = new InventorySummary();
-        
-        summary.totalItems = items.size();
-        summary.totalCategories = inventoryManager.getCategories().size();
-        
-        summary.totalValue = items.stream()
-            .mapToDouble(item -> item.getPrice() * item.getQuantity())
-            .sum();
-        
-        summary.averageItemValue = summary.totalItems > 0 ? 
-            summary.totalValue / summary.totalItems : 0;
-        
-        summary.lowStockItems = (int) items.stream()
-            .filter(item -> item.getQuantity() <= item.getLowStockThreshold() && item.getQuantity() > 0)
-            .count();
-        
-        summary.outOfStockItems = (int) items.stream()
-            .filter(item -> item.getQuantity() == 0)
-            .count();
-        
-        summary.expiringItems = (int) items.stream()
-            .filter(Item::isExpiring)
-            .count();
-        
-        summary.expiredItems = (int) items.stream()
-            .filter(Item::isExpired)
-            .count();
-        
-        Map<String, Double> categoryValues = items.stream()
-            .collect(Collectors.groupingBy(
-                Item::getCategory,
-                Collectors.summingDouble(item -> item.getPrice() * item.getQuantity())
-            ));
-        
-        summary.topCategories = categoryValues.entrySet().stream()
-            .sorted(Map.Entry.<String, Double>comparingByValue().reversed())
-            .collect(Collectors.toMap(
-                Map.Entry::getKey,
-                Map.Entry::getValue,
-                (e1, e2) -> e1,
-                LinkedHashMap::new
-            ));
-        
-        return summary;
-    }
-
     private static void showRecentActivity() {
-        List<String> recentLogs = ExportUtils.getTransactionLogs();
+        List<String> recentLogs = ExportUtils.getRecentTransactionLogs(5);
         if (!recentLogs.isEmpty()) {
             System.out.println("\n" + "─".repeat(60));
             System.out.println("RECENT ACTIVITY (Last 5 transactions)");
             System.out.println(" ".repeat(60));
             
-            int count = Math.min(5, recentLogs.size());
-            for (int i = recentLogs.size() - count; i < recentLogs.size(); i++) {
-                String log = recentLogs.get(i);
+            for (String log : recentLogs) {
                 if (log.length() > 80) {
                     log = log.substring(0, 77) + "...";
                 }
@@ -1,16 +1,25 @@
 package com.sims.models;
 
+import com.sims.utils.BinaryIO;
+import com.sims.utils.Codec;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.Serializable;
 import java.time.LocalDate;
 import java.time.temporal.ChronoUnit;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
 public class Item implements Serializable {
     private static final long serialVersionUID = 1L;
+    public static final int DEFAULT_EXPIRY_WARNING_DAYS = 7;
     final private String id;
     private String name;
     private String category;
-    private int quantity;
+    private volatile int quantity;
+    private volatile int reserved;
     private double price;
     private String description;
     private int lowStockThreshold;
@@ -18,6 +27,60 @@ public class Item implements Serializable {
     final private String barcode;
     final private LocalDate dateAdded;
     
+    private static final AtomicIntegerFieldUpdater<Item> QUANTITY =
+        AtomicIntegerFieldUpdater.newUpdater(Item.class, "quantity");
+    private static final AtomicIntegerFieldUpdater<Item> RESERVED =
+        AtomicIntegerFieldUpdater.newUpdater(Item.class, "reserved");
+    
+    final private static AtomicInteger barcodeSequence = new AtomicInteger((int) (Math.random() * 1000));
+    
+    public static final Codec<Item> CODEC = new Codec<Item>() {
+        @Override
+        public int schemaVersion() {
+            return 2;
+        }
+        
+        @Override
+        public void write(DataOutput out, Item item) throws IOException {
+            BinaryIO.writeString(out, item.id);
+            BinaryIO.writeString(out, item.name);
+            BinaryIO.writeString(out, item.category);
+            BinaryIO.writeSignedVarInt(out, item.quantity);
+            out.writeDouble(item.price);
+            BinaryIO.writeString(out, item.description);
+            BinaryIO.writeSignedVarInt(out, item.lowStockThreshold);
+            BinaryIO.writeDate(out, item.expiryDate);
+            BinaryIO.writeString(out, item.barcode);
+            BinaryIO.writeDate(out, item.dateAdded);
+            BinaryIO.writeSignedVarInt(out, item.reserved);
+        }
+        
+        @Override
+        public Item read(DataInput in, int schemaVersion) throws IOException {
+            String id = BinaryIO.readString(in);
+            String name = BinaryIO.readString(in);
+            String category = BinaryIO.readString(in);
+            int quantity = BinaryIO.readSignedVarInt(in);
+            double price = in.readDouble();
+            String description = BinaryIO.readString(in);
+            int lowStockThreshold = BinaryIO.readSignedVarInt(in);
+            LocalDate expiryDate = BinaryIO.readDate(in);
+            String barcode = BinaryIO.readString(in);
+            LocalDate dateAdded = BinaryIO.readDate(in);
+            Item item = new Item(id, barcode, dateAdded, name, category, quantity, price,
+                                 description, lowStockThreshold, expiryDate);
+            if (schemaVersion >= 2) {
+                item.reserved = BinaryIO.readSignedVarInt(in);
+            }
+            return item;
+        }
+        
+        @Override
+        public String readKey(DataInput in, int schemaVersion) throws IOException {
+            return BinaryIO.readString(in);
+        }
+    };
+    
     public Item(String name, String category, int quantity, double price, String description, int lowStockThreshold) {
         this.id = "ITM" + UUID.randomUUID().toString().substring(0, 8).toUpperCase();
         this.name = name;
@@ -30,14 +93,35 @@ public class Item implements Serializable {
         this.dateAdded = LocalDate.now();
     }
     
+    // Restores an item with its original identity, e.g. when decoding stored data.
+    public Item(String id, String barcode, LocalDate dateAdded, String name, String category, int quantity,
+                double price, String description, int lowStockThreshold, LocalDate expiryDate) {
+        this.id = id;
+        this.barcode = barcode;
+        this.dateAdded = dateAdded;
+        this.name = name;
+        this.category = category;
+        this.quantity = quantity;
+        this.price = price;
+        this.description = description;
+        this.lowStockThreshold = lowStockThreshold;
+        this.expiryDate = expiryDate;
+    }
+    
     private String generateBarcode() {
-        return "BC" + System.currentTimeMillis() + (int)(Math.random() * 1000);
+        // A shared sequence instead of a random suffix, so items created by
+        // concurrent threads within the same millisecond don't collide.
+        return "BC" + System.currentTimeMillis() + String.format("%03d", Math.floorMod(barcodeSequence.getAndIncrement(), 1000));
     }
     
     public boolean isExpiring() {
+        return isExpiring(DEFAULT_EXPIRY_WARNING_DAYS);
+    }
+    
+    public boolean isExpiring(int days) {
         if (expiryDate == null) return false;
         long daysUntilExpiry = ChronoUnit.DAYS.between(LocalDate.now(), expiryDate);
-        return daysUntilExpiry > 0 && daysUntilExpiry <= 7;
+        return daysUntilExpiry > 0 && daysUntilExpiry <= days;
     }
     
     public boolean isExpired() {
@@ -78,6 +162,10 @@ public class Item implements Serializable {
     public void setCategory(String category) { this.category = category; }
     public int getQuantity() { return quantity; }
     public void setQuantity(int quantity) { this.quantity = quantity; }
+    public boolean compareAndSetQuantity(int expect, int update) { return QUANTITY.compareAndSet(this, expect, update); }
+    public int getReserved() { return reserved; }
+    public boolean compareAndSetReserved(int expect, int update) { return RESERVED.compareAndSet(this, expect, update); }
+    public int getAvailableQuantity() { return quantity - reserved; }
     public double getPrice() { return price; }
     public void setPrice(double price) { this.price = price; }
     public String getDescription() { return description; }
@@ -1,5 +1,10 @@
 package com.sims.models;
 
+import com.sims.utils.BinaryIO;
+import com.sims.utils.Codec;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.Serializable;
 import java.time.LocalDateTime;
 import java.util.UUID;
@@ -14,6 +19,36 @@ public class Supplier implements Serializable {
     private String address;
     final private LocalDateTime createdDate;
     
+    public static final Codec<Supplier> CODEC = new Codec<Supplier>() {
+        @Override
+        public int schemaVersion() {
+            return 1;
+        }
+        
+        @Override
+        public void write(DataOutput out, Supplier supplier) throws IOException {
+            BinaryIO.writeString(out, supplier.id);
+            BinaryIO.writeString(out, supplier.name);
+            BinaryIO.writeString(out, supplier.contactPerson);
+            BinaryIO.writeString(out, supplier.email);
+            BinaryIO.writeString(out, supplier.phone);
+            BinaryIO.writeString(out, supplier.address);
+            BinaryIO.writeDateTime(out, supplier.createdDate);
+        }
+        
+        @Override
+        public Supplier read(DataInput in, int schemaVersion) throws IOException {
+            String id = BinaryIO.readString(in);
+            String name = BinaryIO.readString(in);
+            String contactPerson = BinaryIO.readString(in);
+            String email = BinaryIO.readString(in);
+            String phone = BinaryIO.readString(in);
+            String address = BinaryIO.readString(in);
+            LocalDateTime createdDate = BinaryIO.readDateTime(in);
+            return new Supplier(id, createdDate, name, contactPerson, email, phone, address);
+        }
+    };
+    
     public Supplier(String name, String contactPerson, String email, String phone, String address) {
         this.id = "SUP" + UUID.randomUUID().toString().substring(0, 8).toUpperCase();
         this.name = name;
@@ -24,6 +59,17 @@ public class Supplier implements Serializable {
         this.createdDate = LocalDateTime.now();
     }
     
+    private Supplier(String id, LocalDateTime createdDate, String name, String contactPerson,
+                     String email, String phone, String address) {
+        this.id = id;
+        this.createdDate = createdDate;
+        this.name = name;
+        this.contactPerson = contactPerson;
+        this.email = email;
+        this.phone = phone;
+        this.address = address;
+    }
+    
     // Getters and Setters
     public String getId() { return id; }
     public String getName() { return name; }
@@ -1,5 +1,10 @@
 package com.sims.models;
 
+import com.sims.utils.BinaryIO;
+import com.sims.utils.Codec;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.Serializable;
 import java.time.LocalDateTime;
 
@@ -8,21 +13,68 @@ public class Transaction implements Serializable {
     final private String id;
     final private String userId;
     final private String action;
+    final private String itemId;
     final private String details;
     final private LocalDateTime timestamp;
     
+    public static final Codec<Transaction> CODEC = new Codec<Transaction>() {
+        @Override
+        public int schemaVersion() {
+            return 1;
+        }
+        
+        @Override
+        public void write(DataOutput out, Transaction transaction) throws IOException {
+            BinaryIO.writeString(out, transaction.id);
+            BinaryIO.writeString(out, transaction.userId);
+            BinaryIO.writeString(out, transaction.action);
+            BinaryIO.writeString(out, transaction.itemId);
+            BinaryIO.writeString(out, transaction.details);
+            BinaryIO.writeDateTime(out, transaction.timestamp);
+        }
+        
+        @Override
+        public Transaction read(DataInput in, int schemaVersion) throws IOException {
+            String id = BinaryIO.readString(in);
+            String userId = BinaryIO.readString(in);
+            String action = BinaryIO.readString(in);
+            String itemId = BinaryIO.readString(in);
+            String details = BinaryIO.readString(in);
+            LocalDateTime timestamp = BinaryIO.readDateTime(in);
+            return new Transaction(id, userId, action, itemId, details, timestamp);
+        }
+        
+        @Override
+        public String readKey(DataInput in, int schemaVersion) throws IOException {
+            return BinaryIO.readString(in);
+        }
+    };
+    
     public Transaction(String userId, String action, String details) {
-        this.id = "TXN" + System.currentTimeMillis();
+        this(userId, action, null, details);
+    }
+    
+    // For actions on a single item, so audits can find them by item ID.
+    public Transaction(String userId, String action, String itemId, String details) {
+        this("TXN" + System.currentTimeMillis(), userId, action, itemId, details, LocalDateTime.now());
+    }
+    
+    // Restore constructor for persistence
+    public Transaction(String id, String userId, String action, String itemId, String details,
+                       LocalDateTime timestamp) {
+        this.id = id;
         this.userId = userId;
         this.action = action;
+        this.itemId = itemId;
         this.details = details;
-        this.timestamp = LocalDateTime.now();
+        this.timestamp = timestamp;
     }
     
     // Getters
     public String getId() { return id; }
     public String getUserId() { return userId; }
     public String getAction() { return action; }
+    public String getItemId() { return itemId; }
     public String getDetails() { return details; }
     public LocalDateTime getTimestamp() { return timestamp; }
     
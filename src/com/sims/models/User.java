@@ -1,5 +1,10 @@
 package com.sims.models;
 
+import com.sims.utils.BinaryIO;
+import com.sims.utils.Codec;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.Serializable;
 import java.time.LocalDateTime;
 
@@ -11,6 +16,34 @@ public class User implements Serializable {
     private LocalDateTime lastLogin;
     final private LocalDateTime createdDate;
     
+    public static final Codec<User> CODEC = new Codec<User>() {
+        @Override
+        public int schemaVersion() {
+            return 1;
+        }
+        
+        @Override
+        public void write(DataOutput out, User user) throws IOException {
+            BinaryIO.writeString(out, user.username);
+            BinaryIO.writeString(out, user.passwordHash);
+            BinaryIO.writeString(out, user.role);
+            BinaryIO.writeDateTime(out, user.lastLogin);
+            BinaryIO.writeDateTime(out, user.createdDate);
+        }
+        
+        @Override
+        public User read(DataInput in, int schemaVersion) throws IOException {
+            String username = BinaryIO.readString(in);
+            String passwordHash = BinaryIO.readString(in);
+            String role = BinaryIO.readString(in);
+            LocalDateTime lastLogin = BinaryIO.readDateTime(in);
+            LocalDateTime createdDate = BinaryIO.readDateTime(in);
+            User user = new User(username, passwordHash, role, createdDate);
+            user.lastLogin = lastLogin;
+            return user;
+        }
+    };
+    
     public User(String username, String passwordHash, String role) {
         this.username = username;
         this.passwordHash = passwordHash;
@@ -18,6 +51,13 @@ public class User implements Serializable {
         this.createdDate = LocalDateTime.now();
     }
     
+    private User(String username, String passwordHash, String role, LocalDateTime createdDate) {
+        this.username = username;
+        this.passwordHash = passwordHash;
+        this.role = role;
+        this.createdDate = createdDate;
+    }
+    
     // Getters and Setters
     public String getUsername() { return username; }
     public void setUsername(String username) { this.username = username; }
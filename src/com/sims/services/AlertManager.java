@@ -5,6 +5,17 @@ import java.util.List;
 import java.util.stream.Collectors;
 
 public class AlertManager {
+    // How many days ahead an expiry date counts as "expiring soon".
+    private static volatile int expiryWarningDays =
+        Integer.getInteger("sims.expiry.warningDays", Item.DEFAULT_EXPIRY_WARNING_DAYS);
+    
+    public static int getExpiryWarningDays() {
+        return expiryWarningDays;
+    }
+    
+    public static void setExpiryWarningDays(int days) {
+        expiryWarningDays = Math.max(0, days);
+    }
     
     public static void showDailyAlerts(List<Item> items) {
         List<Item> lowStockItems = getLowStockItems(items);
@@ -31,8 +42,9 @@ public class AlertManager {
     }
     
     public static List<Item> getExpiringItems(List<Item> items) {
+        int days = expiryWarningDays;
         return items.stream()
-                   .filter(Item::isExpiring)
+                   .filter(item -> item.isExpiring(days))
                    .collect(Collectors.toList());
     }
     
@@ -42,6 +54,25 @@ public class AlertManager {
                    .collect(Collectors.toList());
     }
     
+    // Answered from the inventory's expiry index, soonest first, without
+    // looking at items that have no expiry date or are outside the window.
+    public static List<Item> getExpiringItems(InventoryManager inventoryManager) {
+        return inventoryManager.getExpiringItems(expiryWarningDays);
+    }
+    
+    public static List<Item> getExpiredItems(InventoryManager inventoryManager) {
+        return inventoryManager.getExpiredItems();
+    }
+    
+    // Read from the inventory's restock queue, most urgent first. The queue
+    // also holds out-of-stock items whose threshold is below zero, which
+    // don't count as low stock here.
+    public static List<Item> getLowStockItems(InventoryManager inventoryManager) {
+        return inventoryManager.getItemsNeedingRestock(Integer.MAX_VALUE).stream()
+                   .filter(item -> item.getQuantity() <= item.getLowStockThreshold())
+                   .collect(Collectors.toList());
+    }
+    
     public static int getLowStockCount(List<Item> items) {
         return getLowStockItems(items).size();
     }
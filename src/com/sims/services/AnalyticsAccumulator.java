@@ -0,0 +1,88 @@
+package com.sims.services;
+
+import com.sims.models.Item;
+import java.util.*;
+import java.util.stream.Collector;
+
+// Everything getInventoryAnalytics reports, gathered in one pass. Partial
+// accumulators over disjoint parts of a catalog merge into the same result,
+// which is what lets the parallel mode split the work across cores.
+// Categories are grouped as CategoryIndex groups them, so these figures
+// match the ones InventoryManager keeps. The collector is ordered, so each
+// category keeps the spelling of its first item in list order.
+class AnalyticsAccumulator {
+    final private InventoryStats stats = new InventoryStats();
+    final private Map<String, Category> categories = new LinkedHashMap<>();
+
+    private static final class Category {
+        final String name;
+        int count;
+        double value;
+
+        Category(String name) {
+            this.name = name;
+        }
+    }
+
+    static Collector<Item, AnalyticsAccumulator, AnalyticsAccumulator> collector() {
+        return Collector.of(AnalyticsAccumulator::new, AnalyticsAccumulator::add, AnalyticsAccumulator::merge,
+                            Collector.Characteristics.IDENTITY_FINISH);
+    }
+
+    void add(Item item) {
+        stats.accumulate(item);
+        String name = CategoryIndex.displayName(item.getCategory());
+        Category category = categories.computeIfAbsent(CategoryIndex.key(name), k -> new Category(name));
+        category.count++;
+        category.value += item.getPrice() * item.getQuantity();
+    }
+
+    // `other` covers items after this one's.
+    AnalyticsAccumulator merge(AnalyticsAccumulator other) {
+        stats.merge(other.stats);
+        other.categories.forEach((key, theirs) -> {
+            Category category = categories.computeIfAbsent(key, k -> new Category(theirs.name));
+            category.count += theirs.count;
+            category.value += theirs.value;
+        });
+        return this;
+    }
+
+    InventoryStats getStats() {
+        return stats;
+    }
+
+    Map<String, Integer> getCategoryCounts() {
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        for (Category category : categories.values()) {
+            counts.put(category.name, category.count);
+        }
+        return counts;
+    }
+
+    Map<String, Double> getCategoryValues() {
+        Map<String, Double> values = new LinkedHashMap<>();
+        for (Category category : categories.values()) {
+            values.put(category.name, category.value);
+        }
+        return values;
+    }
+
+    List<Map.Entry<String, Double>> getTopValueCategories(int limit) {
+        PriorityQueue<Category> top = new PriorityQueue<>(Comparator.comparingDouble(c -> c.value));
+        for (Category category : categories.values()) {
+            top.add(category);
+            if (top.size() > limit) {
+                top.poll();
+            }
+        }
+
+        List<Map.Entry<String, Double>> result = new ArrayList<>();
+        while (!top.isEmpty()) {
+            Category category = top.poll();
+            result.add(new AbstractMap.SimpleImmutableEntry<>(category.name, category.value));
+        }
+        Collections.reverse(result);
+        return result;
+    }
+}
@@ -1,94 +1,66 @@
 package com.sims.services;
 
 import com.sims.models.Item;
+import com.sims.utils.MappedRecordStore;
 import java.util.*;
-import java.util.stream.Collectors;
 
 public class AnalyticsService {
     
+    // Catalogs at least this large are analysed in parallel.
+    private static final int PARALLEL_THRESHOLD = 50_000;
+    
+    // Cold path for item lists that aren't backed by an InventoryManager:
+    // every figure is gathered in a single pass over the items.
     public static Map<String, Object> getInventoryAnalytics(List<Item> items) {
-        Map<String, Object> analytics = new HashMap<>();
-        
-        // Basic metrics
-        analytics.put("totalItems", items.size());
-        analytics.put("totalValue", calculateTotalValue(items));
-        analytics.put("averagePrice", calculateAveragePrice(items));
-        
-        // Category analysis
-        analytics.put("categoryDistribution", getCategoryDistribution(items));
-        analytics.put("topValueCategories", getTopValueCategories(items));
-        
-        // Stock analysis
-        analytics.put("stockDistribution", getStockDistribution(items));
-        analytics.put("lowStockPercentage", getLowStockPercentage(items));
-        
-        return analytics;
+        return getInventoryAnalytics(items, items.size() >= PARALLEL_THRESHOLD);
     }
     
-    private static double calculateTotalValue(List<Item> items) {
-        return items.stream()
-                   .mapToDouble(item -> item.getPrice() * item.getQuantity())
-                   .sum();
+    // The parallel mode splits the list across the common fork-join pool and
+    // merges per-thread accumulators, so it wants a list that splits cheaply
+    // (ArrayList or a MappedRecordStore view).
+    public static Map<String, Object> getInventoryAnalytics(List<Item> items, boolean parallel) {
+        AnalyticsAccumulator result = (parallel ? items.parallelStream() : items.stream())
+            .collect(AnalyticsAccumulator.collector());
+        return toAnalytics(result.getStats(), result.getCategoryCounts(), result.getTopValueCategories(5));
     }
     
-    private static double calculateAveragePrice(List<Item> items) {
-        return items.stream()
-                   .mapToDouble(Item::getPrice)
-                   .average()
-                   .orElse(0.0);
+    // Offline reporting straight from a snapshot; records are decoded by the
+    // worker threads and never held on the heap all at once.
+    public static Map<String, Object> getSnapshotAnalytics(MappedRecordStore<Item> snapshot) {
+        return getInventoryAnalytics(snapshot.asList(), snapshot.size() >= PARALLEL_THRESHOLD);
     }
     
-    private static Map<String, Integer> getCategoryDistribution(List<Item> items) {
-        return items.stream()
-                   .collect(Collectors.groupingBy(
-                       Item::getCategory,
-                       Collectors.summingInt(item -> 1)
-                   ));
+    // Same figures, read from the totals and category index the inventory
+    // keeps up to date, so nothing is recomputed per call.
+    public static Map<String, Object> getInventoryAnalytics(InventoryManager inventoryManager) {
+        return toAnalytics(inventoryManager.getStats(),
+                           inventoryManager.getCategorySummary(),
+                           inventoryManager.getTopValueCategories(5));
     }
     
-    private static List<Map.Entry<String, Double>> getTopValueCategories(List<Item> items) {
-        Map<String, Double> categoryValues = items.stream()
-            .collect(Collectors.groupingBy(
-                Item::getCategory,
-                Collectors.summingDouble(item -> item.getPrice() * item.getQuantity())
-            ));
+    private static Map<String, Object> toAnalytics(InventoryStats stats, Map<String, Integer> categoryDistribution,
+                                                   List<Map.Entry<String, Double>> topValueCategories) {
+        Map<String, Object> analytics = new HashMap<>();
         
-        return categoryValues.entrySet().stream()
-                           .sorted(Map.Entry.<String, Double>comparingByValue().reversed())
-                           .limit(5)
-                           .collect(Collectors.toList());
-    }
-    
-    private static Map<String, Integer> getStockDistribution(List<Item> items) {
-        Map<String, Integer> distribution = new HashMap<>();
-        distribution.put("outOfStock", 0);
-        distribution.put("lowStock", 0);
-        distribution.put("normalStock", 0);
-        distribution.put("overStock", 0);
+        // Basic metrics
+        analytics.put("totalItems", stats.getCount());
+        analytics.put("totalValue", stats.getTotalValue());
+        analytics.put("averagePrice", stats.getAveragePrice());
         
-        for (Item item : items) {
-            if (item.getQuantity() == 0) {
-                distribution.put("outOfStock", distribution.get("outOfStock") + 1);
-            } else if (item.getQuantity() <= item.getLowStockThreshold()) {
-                distribution.put("lowStock", distribution.get("lowStock") + 1);
-            } else if (item.getQuantity() > item.getLowStockThreshold() * 3) {
-                distribution.put("overStock", distribution.get("overStock") + 1);
-            } else {
-                distribution.put("normalStock", distribution.get("normalStock") + 1);
-            }
-        }
+        // Category analysis
+        analytics.put("categoryDistribution", categoryDistribution);
+        analytics.put("topValueCategories", topValueCategories);
         
-        return distribution;
+        // Stock analysis
+        analytics.put("stockDistribution", stats.getStockDistribution());
+        analytics.put("lowStockPercentage", stats.getLowStockPercentage());
+        
+        return analytics;
     }
     
-    private static double getLowStockPercentage(List<Item> items) {
-        if (items.isEmpty()) return 0.0;
-        
-        long lowStockCount = items.stream()
-                                 .filter(item -> item.getQuantity() <= item.getLowStockThreshold())
-                                 .count();
-        
-        return (double) lowStockCount / items.size() * 100;
+    // Generate purchase recommendations, most urgent first
+    public static List<String> generatePurchaseRecommendations(InventoryManager inventoryManager) {
+        return generatePurchaseRecommendations(AlertManager.getLowStockItems(inventoryManager));
     }
     
     // Generate purchase recommendations
@@ -0,0 +1,524 @@
+package com.sims.services;
+
+import com.sims.models.Transaction;
+import com.sims.utils.BinaryIO;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Typed, queryable copy of the transaction log. Each transaction is stored
+// once as a Transaction.CODEC record, and its time, user, action and item ID
+// are also appended to fixed-width column files, the strings as codes into
+// per-field dictionaries. A query binary-searches the time column for its
+// range, then scans only the int columns it filters on, newest first, and
+// decodes just the records it returns; nothing per transaction is kept in
+// memory. Written only from the transaction log writer's thread; readers
+// see whole batches once the record count is published. Records keep the
+// codec schema version they were written with: the records file header has
+// the version from the first record on, and schema.col lists each later
+// change as the index of the first record written under the new version.
+public class AuditStore {
+    private static final int NONE = -1;
+    private static final int SECONDS_PER_DAY = 86_400;
+    // countBy's key for transactions without a user or action.
+    private static final String NO_VALUE = "(none)";
+    // The records file starts with the schema version of its first record.
+    private static final int RECORDS_HEADER = 4;
+    private static final Pattern ITEM_IN_DETAILS =
+        Pattern.compile("\\(ID: ([^)\\s]+)\\)|^(?:Updated|Deleted) item: (\\S+)$");
+
+    public enum GroupBy {
+        ACTION,
+        USER,
+        DAY
+    }
+
+    // Filters left unset match everything. Times are inclusive.
+    public static class Query {
+        private String user;
+        private String action;
+        private String itemId;
+        private LocalDateTime from;
+        private LocalDateTime to;
+        private int offset;
+        private int limit = 50;
+
+        public Query user(String user) { this.user = user; return this; }
+        public Query action(String action) { this.action = action; return this; }
+        public Query itemId(String itemId) { this.itemId = itemId; return this; }
+        public Query from(LocalDateTime from) { this.from = from; return this; }
+        public Query to(LocalDateTime to) { this.to = to; return this; }
+        public Query offset(int offset) { this.offset = Math.max(0, offset); return this; }
+        public Query limit(int limit) { this.limit = Math.max(0, limit); return this; }
+    }
+
+    public static class Page {
+        final private List<Transaction> transactions;
+        final private int offset;
+        final private boolean hasMore;
+
+        private Page(List<Transaction> transactions, int offset, boolean hasMore) {
+            this.transactions = transactions;
+            this.offset = offset;
+            this.hasMore = hasMore;
+        }
+
+        // Newest first.
+        public List<Transaction> getTransactions() { return transactions; }
+        public boolean hasMore() { return hasMore; }
+        public int getNextOffset() { return offset + transactions.size(); }
+    }
+
+    private static final class Dictionary {
+        final private File file;
+        final private Map<String, Integer> codes = new ConcurrentHashMap<>();
+        final private List<String> values = new ArrayList<>();
+        final private ByteArrayOutputStream pending = new ByteArrayOutputStream();
+
+        Dictionary(File file) throws IOException {
+            this.file = file;
+            if (file.exists()) {
+                byte[] bytes = Files.readAllBytes(file.toPath());
+                ByteArrayInputStream buffer = new ByteArrayInputStream(bytes);
+                DataInputStream in = new DataInputStream(buffer);
+                long complete = 0;
+                try {
+                    while (buffer.available() > 0) {
+                        add(BinaryIO.readString(in));
+                        complete = bytes.length - buffer.available();
+                    }
+                } catch (EOFException e) {
+                    // A value cut short by a crash; no column refers to it.
+                    // Cut it off, or values appended after it would be read
+                    // back with the wrong codes.
+                    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+                        channel.truncate(complete);
+                    }
+                }
+            }
+        }
+
+        int find(String value) {
+            return value == null ? NONE : codes.getOrDefault(value, NONE);
+        }
+
+        // Writer thread only; the new value reaches the file on flush().
+        int code(String value) throws IOException {
+            int code = find(value);
+            if (code == NONE && value != null) {
+                code = add(value);
+                BinaryIO.writeString(new DataOutputStream(pending), value);
+            }
+            return code;
+        }
+
+        private synchronized int add(String value) {
+            values.add(value);
+            codes.put(value, values.size() - 1);
+            return values.size() - 1;
+        }
+
+        synchronized String get(int code) {
+            return code == NONE ? null : values.get(code);
+        }
+
+        synchronized int size() {
+            return values.size();
+        }
+
+        void flush() throws IOException {
+            if (pending.size() > 0) {
+                try (OutputStream out = new FileOutputStream(file, true)) {
+                    pending.writeTo(out);
+                }
+                pending.reset();
+            }
+        }
+    }
+
+    private static final class Column {
+        final FileChannel channel;
+        final int width;
+
+        Column(File file, int width) throws IOException {
+            this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                                            StandardOpenOption.READ, StandardOpenOption.WRITE);
+            this.width = width;
+        }
+
+        long count() throws IOException {
+            return channel.size() / width;
+        }
+
+        void append(ByteBuffer values) throws IOException {
+            values.flip();
+            long position = channel.size() / width * width;
+            while (values.hasRemaining()) {
+                position += channel.write(values, position);
+            }
+        }
+
+        void truncate(long count) throws IOException {
+            channel.truncate(count * width);
+        }
+
+        MappedByteBuffer map(int count) throws IOException {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, (long) count * width);
+        }
+    }
+
+    final private Dictionary users;
+    final private Dictionary actions;
+    final private Dictionary items;
+    final private Column times;
+    final private Column userCodes;
+    final private Column actionCodes;
+    final private Column itemCodes;
+    // End offset of each record in the records file.
+    final private Column ends;
+    final private FileChannel records;
+    // [int first record][int schema version] per change of schema.
+    final private Column schemaChanges;
+    final private NavigableMap<Integer, Integer> schemaVersions = new ConcurrentSkipListMap<>();
+    private volatile int count;
+    private long lastTime = Long.MIN_VALUE;
+
+    public AuditStore(File directory) throws IOException {
+        directory.mkdirs();
+        users = new Dictionary(new File(directory, "users.dict"));
+        actions = new Dictionary(new File(directory, "actions.dict"));
+        items = new Dictionary(new File(directory, "items.dict"));
+        times = new Column(new File(directory, "time.col"), Long.BYTES);
+        userCodes = new Column(new File(directory, "user.col"), Integer.BYTES);
+        actionCodes = new Column(new File(directory, "action.col"), Integer.BYTES);
+        itemCodes = new Column(new File(directory, "item.col"), Integer.BYTES);
+        ends = new Column(new File(directory, "end.col"), Long.BYTES);
+        records = FileChannel.open(new File(directory, "records.dat").toPath(), StandardOpenOption.CREATE,
+                                   StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (records.size() == 0) {
+            ByteBuffer header = ByteBuffer.allocate(RECORDS_HEADER).putInt(0, Transaction.CODEC.schemaVersion());
+            records.write(header, 0);
+        }
+        ByteBuffer header = ByteBuffer.allocate(RECORDS_HEADER);
+        records.read(header, 0);
+        schemaVersions.put(0, header.getInt(0));
+        schemaChanges = new Column(new File(directory, "schema.col"), 2 * Integer.BYTES);
+        ByteBuffer changes = ByteBuffer.allocate((int) (schemaChanges.count() * schemaChanges.width));
+        schemaChanges.channel.read(changes, 0);
+        for (int i = 0; i < changes.capacity(); i += schemaChanges.width) {
+            schemaVersions.put(changes.getInt(i), changes.getInt(i + Integer.BYTES));
+        }
+        recover();
+    }
+
+    // Cuts every file back to the transactions that were fully written, in
+    // case a crash stopped a batch part way. Columns are written after the
+    // records and dictionaries they refer to, so the shortest one decides.
+    private void recover() throws IOException {
+        long valid = Math.min(Math.min(times.count(), ends.count()),
+                              Math.min(userCodes.count(), Math.min(actionCodes.count(), itemCodes.count())));
+        while (valid > 0 && endOf(valid - 1) > records.size()) {
+            valid--;
+        }
+        for (Column column : new Column[] {times, userCodes, actionCodes, itemCodes, ends}) {
+            column.truncate(valid);
+        }
+        records.truncate(valid > 0 ? endOf(valid - 1) : RECORDS_HEADER);
+        // Schema changes are written before the records they cover.
+        long changes = 0;
+        ByteBuffer first = ByteBuffer.allocate(Integer.BYTES);
+        while (changes < schemaChanges.count()) {
+            schemaChanges.channel.read(first.clear(), changes * schemaChanges.width);
+            if (first.getInt(0) > valid) {
+                break;
+            }
+            changes++;
+        }
+        schemaChanges.truncate(changes);
+        schemaVersions.tailMap((int) valid, false).clear();
+        lastTime = valid > 0 ? readLong(times, valid - 1) : Long.MIN_VALUE;
+        count = (int) valid;
+    }
+
+    private long endOf(long index) throws IOException {
+        return index < 0 ? RECORDS_HEADER : readLong(ends, index);
+    }
+
+    private static long readLong(Column column, long index) throws IOException {
+        ByteBuffer value = ByteBuffer.allocate(Long.BYTES);
+        column.channel.read(value, index * Long.BYTES);
+        return value.getLong(0);
+    }
+
+    public int size() {
+        return count;
+    }
+
+    void append(List<Transaction> batch) throws IOException {
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            int schemaVersion = Transaction.CODEC.schemaVersion();
+            if (schemaVersions.lastEntry().getValue() != schemaVersion) {
+                schemaChanges.append(ByteBuffer.allocate(schemaChanges.width).putInt(count).putInt(schemaVersion));
+                schemaVersions.put(count, schemaVersion);
+            }
+            ByteArrayOutputStream encoded = new ByteArrayOutputStream(batch.size() * 96);
+            DataOutputStream out = new DataOutputStream(encoded);
+            ByteBuffer timeValues = ByteBuffer.allocate(batch.size() * Long.BYTES);
+            ByteBuffer userValues = ByteBuffer.allocate(batch.size() * Integer.BYTES);
+            ByteBuffer actionValues = ByteBuffer.allocate(batch.size() * Integer.BYTES);
+            ByteBuffer itemValues = ByteBuffer.allocate(batch.size() * Integer.BYTES);
+            ByteBuffer endValues = ByteBuffer.allocate(batch.size() * Long.BYTES);
+            long recordsEnd = endOf(count - 1);
+            for (Transaction transaction : batch) {
+                Transaction.CODEC.write(out, transaction);
+                endValues.putLong(recordsEnd + encoded.size());
+                // Kept non-decreasing so the column can be binary searched;
+                // records queued from different threads may be a moment apart.
+                lastTime = Math.max(lastTime, transaction.getTimestamp().toEpochSecond(ZoneOffset.UTC));
+                timeValues.putLong(lastTime);
+                userValues.putInt(users.code(transaction.getUserId()));
+                actionValues.putInt(actions.code(transaction.getAction()));
+                itemValues.putInt(items.code(transaction.getItemId()));
+            }
+
+            users.flush();
+            actions.flush();
+            items.flush();
+            ByteBuffer bytes = ByteBuffer.wrap(encoded.toByteArray());
+            long position = recordsEnd;
+            while (bytes.hasRemaining()) {
+                position += records.write(bytes, position);
+            }
+            ends.append(endValues);
+            userCodes.append(userValues);
+            actionCodes.append(actionValues);
+            itemCodes.append(itemValues);
+            times.append(timeValues);
+            count += batch.size();
+        } catch (IOException e) {
+            recover();
+            throw e;
+        }
+    }
+
+    // Copies in history written before the store existed, parsed back from
+    // the text log. Item IDs are recovered from the usual detail formats.
+    void importFrom(SegmentedTransactionLog log) throws IOException {
+        List<Transaction> batch = new ArrayList<>();
+        IOException[] failure = new IOException[1];
+        log.forEach(line -> {
+            Transaction parsed = SegmentedTransactionLog.parse(line);
+            if (parsed == null || failure[0] != null) {
+                return;
+            }
+            batch.add(new Transaction(parsed.getId(), parsed.getUserId(), parsed.getAction(),
+                guessItemId(parsed.getAction(), parsed.getDetails()), parsed.getDetails(), parsed.getTimestamp()));
+            if (batch.size() == 4096) {
+                try {
+                    append(batch);
+                } catch (IOException e) {
+                    failure[0] = e;
+                }
+                batch.clear();
+            }
+        });
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+        append(batch);
+    }
+
+    private static String guessItemId(String action, String details) {
+        if (action.endsWith("_STOCK")) {
+            int space = details.indexOf(' ');
+            return space > 0 ? details.substring(0, space) : null;
+        }
+        Matcher matcher = ITEM_IN_DETAILS.matcher(details);
+        if (matcher.find()) {
+            return matcher.group(1) != null ? matcher.group(1) : matcher.group(2);
+        }
+        return null;
+    }
+
+    // Snapshot of the columns a query needs, limited to the time range.
+    private final class Scan {
+        final int first;
+        final int end;
+        final int user;
+        final int action;
+        final int item;
+        final MappedByteBuffer timeColumn;
+        final MappedByteBuffer userColumn;
+        final MappedByteBuffer actionColumn;
+        final MappedByteBuffer itemColumn;
+        final boolean empty;
+
+        Scan(Query query, boolean needTimes) throws IOException {
+            int size = count;
+            user = users.find(query.user);
+            action = actions.find(query.action);
+            item = items.find(query.itemId);
+            empty = size == 0
+                || (query.user != null && user == NONE)
+                || (query.action != null && action == NONE)
+                || (query.itemId != null && item == NONE);
+            boolean ranged = query.from != null || query.to != null;
+            timeColumn = !empty && (ranged || needTimes) ? times.map(size) : null;
+            userColumn = !empty && query.user != null ? userCodes.map(size) : null;
+            actionColumn = !empty && query.action != null ? actionCodes.map(size) : null;
+            itemColumn = !empty && query.itemId != null ? itemCodes.map(size) : null;
+            if (empty) {
+                first = 0;
+                end = 0;
+            } else {
+                first = query.from == null ? 0 : lowerBound(query.from.toEpochSecond(ZoneOffset.UTC), size);
+                end = query.to == null ? size : lowerBound(query.to.toEpochSecond(ZoneOffset.UTC) + 1, size);
+            }
+        }
+
+        private int lowerBound(long seconds, int size) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (timeColumn.getLong(middle * Long.BYTES) < seconds) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        boolean matches(int index) {
+            return (userColumn == null || userColumn.getInt(index * Integer.BYTES) == user)
+                && (actionColumn == null || actionColumn.getInt(index * Integer.BYTES) == action)
+                && (itemColumn == null || itemColumn.getInt(index * Integer.BYTES) == item);
+        }
+    }
+
+    // One page of matching transactions, newest first.
+    public Page query(Query query) throws IOException {
+        Scan scan = new Scan(query, false);
+        List<Integer> hits = new ArrayList<>(Math.min(query.limit, 1024));
+        int skipped = 0;
+        boolean hasMore = false;
+        for (int i = scan.end - 1; i >= scan.first; i--) {
+            if (!scan.matches(i)) {
+                continue;
+            }
+            if (skipped < query.offset) {
+                skipped++;
+            } else if (hits.size() < query.limit) {
+                hits.add(i);
+            } else {
+                hasMore = true;
+                break;
+            }
+        }
+
+        List<Transaction> transactions = new ArrayList<>(hits.size());
+        for (int index : hits) {
+            transactions.add(readRecord(index));
+        }
+        return new Page(transactions, query.offset, hasMore);
+    }
+
+    public long count(Query query) throws IOException {
+        Scan scan = new Scan(query, false);
+        long matches = 0;
+        for (int i = scan.first; i < scan.end; i++) {
+            if (scan.matches(i)) {
+                matches++;
+            }
+        }
+        return matches;
+    }
+
+    // Matching transactions counted per action, user or day (yyyy-MM-dd),
+    // in key order. Offset and limit do not apply.
+    public Map<String, Long> countBy(Query query, GroupBy groupBy) throws IOException {
+        Scan scan = new Scan(query, groupBy == GroupBy.DAY);
+        Map<String, Long> result = new TreeMap<>();
+        if (scan.empty) {
+            return result;
+        }
+        if (groupBy == GroupBy.DAY) {
+            long day = Long.MIN_VALUE;
+            long dayCount = 0;
+            for (int i = scan.first; i < scan.end; i++) {
+                if (!scan.matches(i)) {
+                    continue;
+                }
+                long matchDay = Math.floorDiv(scan.timeColumn.getLong(i * Long.BYTES), SECONDS_PER_DAY);
+                if (matchDay != day) {
+                    addDay(result, day, dayCount);
+                    day = matchDay;
+                    dayCount = 0;
+                }
+                dayCount++;
+            }
+            addDay(result, day, dayCount);
+            return result;
+        }
+
+        Dictionary dictionary = groupBy == GroupBy.USER ? users : actions;
+        MappedByteBuffer codes = groupBy == GroupBy.USER ? userCodes.map(scan.end) : actionCodes.map(scan.end);
+        long[] counts = new long[dictionary.size()];
+        long none = 0;
+        for (int i = scan.first; i < scan.end; i++) {
+            if (scan.matches(i)) {
+                int code = codes.getInt(i * Integer.BYTES);
+                if (code == NONE) {
+                    none++;
+                    continue;
+                }
+                if (code >= counts.length) {
+                    counts = Arrays.copyOf(counts, code + 1);
+                }
+                counts[code]++;
+            }
+        }
+        for (int code = 0; code < counts.length; code++) {
+            if (counts[code] > 0) {
+                result.merge(dictionary.get(code), counts[code], Long::sum);
+            }
+        }
+        if (none > 0) {
+            result.merge(NO_VALUE, none, Long::sum);
+        }
+        return result;
+    }
+
+    private static void addDay(Map<String, Long> result, long day, long dayCount) {
+        if (dayCount > 0) {
+            result.put(LocalDate.ofEpochDay(day).toString(), dayCount);
+        }
+    }
+
+    private Transaction readRecord(int index) throws IOException {
+        long start = endOf(index - 1);
+        ByteBuffer bytes = ByteBuffer.allocate((int) (endOf(index) - start));
+        while (bytes.hasRemaining()) {
+            if (records.read(bytes, start + bytes.position()) < 0) {
+                throw new EOFException("Audit record " + index + " is cut short");
+            }
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.array()));
+        return Transaction.CODEC.read(in, schemaVersions.floorEntry(index).getValue());
+    }
+}
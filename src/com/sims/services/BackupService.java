@@ -1,13 +1,518 @@
 package com.sims.services;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
 import java.util.zip.*;
 
+// Incremental backups of data/. Files are cut into content-defined chunks
+// (a gear rolling hash picks the cut points, so an insert or append only
+// changes the chunks around it), each chunk is stored once under its
+// SHA-256 in backups/chunks, and a backup is just a manifest in
+// backups/manifests listing every file's size, mtime and chunk hashes. A
+// file whose size and mtime match the previous backup is not read again,
+// so a backup costs about the bytes that changed since the last one. Only
+// the newest sims.backup.keep backups are kept; chunks no other manifest
+// refers to are deleted with them.
 public class BackupService {
     private static final String BACKUP_DIR = "data/backups/";
+    private static final String DATA_DIR = "data";
+    private static final File CHUNK_DIR = new File(BACKUP_DIR, "chunks");
+    private static final File MANIFEST_DIR = new File(BACKUP_DIR, "manifests");
+    // Names of the full-copy backup directories already imported.
+    private static final File LEGACY_IMPORTED = new File(BACKUP_DIR, "legacy-imported");
+    private static final String MANIFEST_MAGIC = "SIMS-BACKUP";
+    private static final int MANIFEST_VERSION = 1;
+    private static final int KEEP_BACKUPS = Math.max(1, Integer.getInteger("sims.backup.keep", 20));
+    private static final int MIN_CHUNK = 2 * 1024;
+    private static final int MAX_CHUNK = 64 * 1024;
+    // A cut where the top 13 bits of the hash are zero: ~8 KB past MIN_CHUNK.
+    private static final int CUT_BITS = 13;
+    private static final int READ_BUFFER_SIZE = 256 * 1024;
+    private static final long[] GEAR = new long[256];
+    
+    static {
+        // Fixed seed: cut points must be the same in every run to dedupe.
+        Random random = new Random(0x5153494d53L);
+        for (int i = 0; i < GEAR.length; i++) {
+            GEAR[i] = random.nextLong();
+        }
+    }
+    
+    public static class BackupInfo {
+        final private String name;
+        final private LocalDateTime created;
+        final private int fileCount;
+        final private long totalBytes;
+        
+        private BackupInfo(String name, LocalDateTime created, int fileCount, long totalBytes) {
+            this.name = name;
+            this.created = created;
+            this.fileCount = fileCount;
+            this.totalBytes = totalBytes;
+        }
+        
+        public String getName() { return name; }
+        public LocalDateTime getCreated() { return created; }
+        public int getFileCount() { return fileCount; }
+        // Size of the data it restores, not of what it added to the store.
+        public long getTotalBytes() { return totalBytes; }
+    }
+    
+    public static class BackupResult {
+        final private BackupInfo backup;
+        final private int newChunks;
+        final private long newBytes;
+        
+        private BackupResult(BackupInfo backup, int newChunks, long newBytes) {
+            this.backup = backup;
+            this.newChunks = newChunks;
+            this.newBytes = newBytes;
+        }
+        
+        public BackupInfo getBackup() { return backup; }
+        public int getNewChunks() { return newChunks; }
+        // Bytes this backup actually added to the chunk store.
+        public long getNewBytes() { return newBytes; }
+    }
+    
+    private static final class FileEntry {
+        final String path;
+        final long size;
+        final long modified;
+        final List<String> chunks;
+        
+        FileEntry(String path, long size, long modified, List<String> chunks) {
+            this.path = path;
+            this.size = size;
+            this.modified = modified;
+            this.chunks = chunks;
+        }
+    }
+    
+    private static final class Manifest {
+        final String name;
+        final long created;
+        final List<FileEntry> files;
+        
+        Manifest(String name, long created, List<FileEntry> files) {
+            this.name = name;
+            this.created = created;
+            this.files = files;
+        }
+        
+        BackupInfo info() {
+            long bytes = 0;
+            for (FileEntry file : files) {
+                bytes += file.size;
+            }
+            return new BackupInfo(name, LocalDateTime.ofInstant(Instant.ofEpochMilli(created), ZoneId.systemDefault()),
+                                  files.size(), bytes);
+        }
+    }
+    
+    // Counts what one backup run wrote to the chunk store.
+    private static final class ChunkWriter {
+        final MessageDigest digest;
+        int newChunks;
+        long newBytes;
+        
+        ChunkWriter() throws IOException {
+            try {
+                digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IOException("SHA-256 is not available", e);
+            }
+        }
+        
+        String write(byte[] data, int length) throws IOException {
+            digest.update(data, 0, length);
+            String hash = HexFormat.of().formatHex(digest.digest());
+            File chunk = chunkFile(hash);
+            if (!chunk.exists()) {
+                chunk.getParentFile().mkdirs();
+                // Written aside and renamed, so a chunk file is never partial.
+                File temp = new File(chunk.getParentFile(), hash + ".tmp");
+                try (FileOutputStream out = new FileOutputStream(temp)) {
+                    out.write(data, 0, length);
+                }
+                Files.move(temp.toPath(), chunk.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                           StandardCopyOption.ATOMIC_MOVE);
+                newChunks++;
+                newBytes += length;
+            }
+            return hash;
+        }
+    }
+    
+    // Backup names have second resolution, so a name already taken (say by
+    // the startup backup) gets a _2, _3... suffix; the result has the name
+    // actually used.
+    public static synchronized BackupResult createBackup(String backupName) throws IOException {
+        checkName(backupName);
+        String requested = backupName;
+        for (int suffix = 2; manifestFile(backupName).exists(); suffix++) {
+            backupName = requested + "_" + suffix;
+        }
+        MANIFEST_DIR.mkdirs();
+        importLegacyBackups();
+        
+        Manifest previous = latestManifest();
+        Map<String, FileEntry> previousFiles = new HashMap<>();
+        if (previous != null) {
+            for (FileEntry file : previous.files) {
+                previousFiles.put(file.path, file);
+            }
+        }
+        
+        // Queued log records go in, and the walk runs on the persistence
+        // thread after pending writes, so no compaction or journal append
+        // can change the item files between reading one and the next.
+        TransactionLogWriter.flush();
+        ChunkWriter writer = new ChunkWriter();
+        long created = System.currentTimeMillis();
+        List<FileEntry> files = new ArrayList<>();
+        try {
+            PersistenceScheduler.runExclusive(
+                () -> files.addAll(snapshot(new File(DATA_DIR), true, previousFiles, writer)));
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("Backup failed: " + e.getMessage(), e);
+        }
+        Manifest manifest = new Manifest(backupName, created, files);
+        writeManifest(manifest);
+        prune(KEEP_BACKUPS);
+        return new BackupResult(manifest.info(), writer.newChunks, writer.newBytes);
+    }
+    
+    // Newest first.
+    public static synchronized List<BackupInfo> listBackups() throws IOException {
+        List<BackupInfo> backups = new ArrayList<>();
+        for (Manifest manifest : readManifests()) {
+            backups.add(manifest.info());
+        }
+        Collections.reverse(backups);
+        return backups;
+    }
+    
+    // Writes the files of a backup under `target`, which should not be the
+    // live data directory while the system is running. Every chunk is
+    // checked against its hash on the way out.
+    public static synchronized void restoreBackup(String backupName, File target) throws IOException {
+        checkName(backupName);
+        File file = manifestFile(backupName);
+        if (!file.exists()) {
+            throw new IOException("No such backup: " + backupName);
+        }
+        Manifest manifest = readManifest(file);
+        MessageDigest digest = new ChunkWriter().digest;
+        for (FileEntry entry : manifest.files) {
+            File restored = new File(target, entry.path);
+            restored.getParentFile().mkdirs();
+            File temp = new File(restored.getParentFile(), restored.getName() + ".restoring");
+            long written = 0;
+            try (OutputStream out = new BufferedOutputStream(new FileOutputStream(temp), READ_BUFFER_SIZE)) {
+                for (String hash : entry.chunks) {
+                    byte[] data;
+                    try {
+                        data = Files.readAllBytes(chunkFile(hash).toPath());
+                    } catch (NoSuchFileException e) {
+                        throw new IOException("Missing chunk " + hash + " of " + entry.path);
+                    }
+                    if (!hash.equals(HexFormat.of().formatHex(digest.digest(data)))) {
+                        throw new IOException("Corrupt chunk " + hash + " of " + entry.path);
+                    }
+                    out.write(data);
+                    written += data.length;
+                }
+            } catch (IOException e) {
+                temp.delete();
+                throw e;
+            }
+            if (written != entry.size) {
+                temp.delete();
+                throw new IOException("Size mismatch restoring " + entry.path);
+            }
+            Files.move(temp.toPath(), restored.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            Files.setLastModifiedTime(restored.toPath(), FileTime.fromMillis(entry.modified));
+        }
+    }
+    
+    // Keeps the newest `keep` backups, then deletes chunks no remaining
+    // backup refers to.
+    public static synchronized void prune(int keep) throws IOException {
+        List<Manifest> manifests = readManifests();
+        for (int i = 0; i < manifests.size() - keep; i++) {
+            Files.deleteIfExists(manifestFile(manifests.get(i).name).toPath());
+        }
+        manifests = manifests.subList(Math.max(0, manifests.size() - keep), manifests.size());
+        
+        Set<String> live = new HashSet<>();
+        for (Manifest manifest : manifests) {
+            for (FileEntry file : manifest.files) {
+                live.addAll(file.chunks);
+            }
+        }
+        File[] buckets = CHUNK_DIR.listFiles(File::isDirectory);
+        if (buckets == null) {
+            return;
+        }
+        for (File bucket : buckets) {
+            File[] chunks = bucket.listFiles();
+            if (chunks == null) {
+                continue;
+            }
+            for (File chunk : chunks) {
+                if (!live.contains(chunk.getName())) {
+                    chunk.delete();
+                }
+            }
+            bucket.delete(); // only succeeds once empty
+        }
+    }
+    
+    // Walks `dir`, reusing the previous backup's entry for files whose size
+    // and mtime have not changed and whose chunks are all still stored.
+    private static List<FileEntry> snapshot(File dir, boolean top, Map<String, FileEntry> previous,
+                                            ChunkWriter writer) throws IOException {
+        List<FileEntry> files = new ArrayList<>();
+        File[] children = dir.listFiles();
+        if (children == null) {
+            return files;
+        }
+        Arrays.sort(children);
+        for (File child : children) {
+            if (child.isDirectory()) {
+                if (!(top && child.getName().equals("backups"))) {
+                    files.addAll(snapshot(child, false, previous, writer));
+                }
+                continue;
+            }
+            if (child.getName().endsWith(".tmp")) {
+                continue; // half-written by an atomic save
+            }
+            String path = relativePath(new File(DATA_DIR), child);
+            // Taken before reading: a write during the read leaves a newer
+            // mtime, so the next backup reads the file again.
+            long modified = child.lastModified();
+            FileEntry old = previous.get(path);
+            if (old != null && old.size == child.length() && old.modified == modified && chunksExist(old)) {
+                files.add(old);
+            } else {
+                files.add(chunkFile(child, path, modified, writer));
+            }
+        }
+        return files;
+    }
+    
+    private static FileEntry chunkFile(File file, String path, long modified, ChunkWriter writer)
+            throws IOException {
+        List<String> chunks = new ArrayList<>();
+        byte[] buffer = new byte[READ_BUFFER_SIZE];
+        byte[] chunk = new byte[MAX_CHUNK];
+        int length = 0;
+        long size = 0;
+        long hash = 0;
+        try (InputStream in = new FileInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                size += read;
+                for (int i = 0; i < read; i++) {
+                    byte b = buffer[i];
+                    chunk[length++] = b;
+                    hash = (hash << 1) + GEAR[b & 0xff];
+                    if (length >= MIN_CHUNK && (hash >>> (64 - CUT_BITS)) == 0 || length == MAX_CHUNK) {
+                        chunks.add(writer.write(chunk, length));
+                        length = 0;
+                        hash = 0;
+                    }
+                }
+            }
+        }
+        if (length > 0) {
+            chunks.add(writer.write(chunk, length));
+        }
+        return new FileEntry(path, size, modified, chunks);
+    }
+    
+    private static boolean chunksExist(FileEntry entry) {
+        for (String hash : entry.chunks) {
+            if (!chunkFile(hash).exists()) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    // Full-copy backup directories from before the chunk store become
+    // manifests dated by the directory's mtime. Each import is read back and
+    // compared with the original, which is left in place for the user to
+    // delete; the directory is noted so it is not imported again once its
+    // manifest has been pruned.
+    private static void importLegacyBackups() throws IOException {
+        File[] dirs = new File(BACKUP_DIR).listFiles(File::isDirectory);
+        if (dirs == null) {
+            return;
+        }
+        Set<String> imported = new HashSet<>();
+        if (LEGACY_IMPORTED.exists()) {
+            imported.addAll(Files.readAllLines(LEGACY_IMPORTED.toPath(), StandardCharsets.UTF_8));
+        }
+        Arrays.sort(dirs);
+        for (File dir : dirs) {
+            if (dir.equals(CHUNK_DIR) || dir.equals(MANIFEST_DIR) || imported.contains(dir.getName())) {
+                continue;
+            }
+            try {
+                checkName(dir.getName());
+                Manifest manifest;
+                if (manifestFile(dir.getName()).exists()) {
+                    manifest = readManifest(manifestFile(dir.getName()));
+                } else {
+                    ChunkWriter writer = new ChunkWriter();
+                    List<FileEntry> files = new ArrayList<>();
+                    collectLegacy(dir, dir, files, writer);
+                    manifest = new Manifest(dir.getName(), dir.lastModified(), files);
+                    writeManifest(manifest);
+                }
+                verify(manifest, dir);
+            } catch (IOException e) {
+                Files.deleteIfExists(manifestFile(dir.getName()).toPath());
+                System.err.println("Could not import old backup " + dir.getName() + ": " + e.getMessage());
+                continue;
+            }
+            Files.write(LEGACY_IMPORTED.toPath(), List.of(dir.getName()), StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            System.out.println("Imported old backup " + dir.getName() + "; the original in "
+                               + dir.getPath() + " can now be deleted");
+        }
+    }
+    
+    // Fails unless the stored chunks rebuild every file under `root` exactly.
+    private static void verify(Manifest manifest, File root) throws IOException {
+        for (FileEntry entry : manifest.files) {
+            try (InputStream original = new BufferedInputStream(new FileInputStream(new File(root, entry.path)),
+                                                                READ_BUFFER_SIZE)) {
+                for (String hash : entry.chunks) {
+                    byte[] chunk = Files.readAllBytes(chunkFile(hash).toPath());
+                    byte[] expected = original.readNBytes(chunk.length);
+                    if (!Arrays.equals(chunk, expected)) {
+                        throw new IOException("stored copy of " + entry.path + " differs");
+                    }
+                }
+                if (original.read() >= 0) {
+                    throw new IOException("stored copy of " + entry.path + " is short");
+                }
+            }
+        }
+    }
+    
+    private static void collectLegacy(File root, File dir, List<FileEntry> files, ChunkWriter writer)
+            throws IOException {
+        File[] children = dir.listFiles();
+        if (children == null) {
+            return;
+        }
+        Arrays.sort(children);
+        for (File child : children) {
+            if (child.isDirectory()) {
+                collectLegacy(root, child, files, writer);
+            } else {
+                files.add(chunkFile(child, relativePath(root, child), child.lastModified(), writer));
+            }
+        }
+    }
+    
+    private static Manifest latestManifest() throws IOException {
+        List<Manifest> manifests = readManifests();
+        return manifests.isEmpty() ? null : manifests.get(manifests.size() - 1);
+    }
+    
+    // Oldest first.
+    private static List<Manifest> readManifests() throws IOException {
+        List<Manifest> manifests = new ArrayList<>();
+        File[] files = MANIFEST_DIR.listFiles((dir, name) -> !name.endsWith(".tmp"));
+        if (files == null) {
+            return manifests;
+        }
+        for (File file : files) {
+            manifests.add(readManifest(file));
+        }
+        manifests.sort(Comparator.comparingLong((Manifest manifest) -> manifest.created)
+                                 .thenComparing(manifest -> manifest.name));
+        return manifests;
+    }
+    
+    // One header line, then a line per file: path, size, mtime and the
+    // comma-separated chunk hashes, tab-separated.
+    private static void writeManifest(Manifest manifest) throws IOException {
+        MANIFEST_DIR.mkdirs();
+        File file = manifestFile(manifest.name);
+        File temp = new File(MANIFEST_DIR, manifest.name + ".tmp");
+        try (FileOutputStream stream = new FileOutputStream(temp);
+             Writer out = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8))) {
+            out.write(MANIFEST_MAGIC + "\t" + MANIFEST_VERSION + "\t" + manifest.created + "\n");
+            for (FileEntry entry : manifest.files) {
+                out.write(entry.path + "\t" + entry.size + "\t" + entry.modified + "\t"
+                          + String.join(",", entry.chunks) + "\n");
+            }
+            out.flush();
+            stream.getFD().sync();
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                   StandardCopyOption.ATOMIC_MOVE);
+    }
+    
+    private static Manifest readManifest(File file) throws IOException {
+        try (BufferedReader in = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String[] header = String.valueOf(in.readLine()).split("\t");
+            if (header.length != 3 || !header[0].equals(MANIFEST_MAGIC)
+                    || Integer.parseInt(header[1]) != MANIFEST_VERSION) {
+                throw new IOException("Not a backup manifest: " + file.getName());
+            }
+            List<FileEntry> files = new ArrayList<>();
+            String line;
+            while ((line = in.readLine()) != null) {
+                String[] fields = line.split("\t", -1);
+                if (fields.length != 4) {
+                    throw new IOException("Malformed backup manifest: " + file.getName());
+                }
+                List<String> chunks = fields[3].isEmpty() ? List.of() : Arrays.asList(fields[3].split(","));
+                files.add(new FileEntry(fields[0], Long.parseLong(fields[1]), Long.parseLong(fields[2]), chunks));
+            }
+            return new Manifest(file.getName(), Long.parseLong(header[2]), files);
+        } catch (NumberFormatException e) {
+            throw new IOException("Malformed backup manifest: " + file.getName());
+        }
+    }
+    
+    private static File manifestFile(String backupName) {
+        return new File(MANIFEST_DIR, backupName);
+    }
+    
+    private static File chunkFile(String hash) {
+        return new File(new File(CHUNK_DIR, hash.substring(0, 2)), hash);
+    }
+    
+    private static String relativePath(File root, File file) {
+        return root.toPath().relativize(file.toPath()).toString().replace(File.separatorChar, '/');
+    }
+    
+    private static void checkName(String backupName) throws IOException {
+        if (backupName.isEmpty() || backupName.endsWith(".tmp")
+                || !backupName.matches("[A-Za-z0-9_.-]+") || backupName.startsWith(".")) {
+            throw new IOException("Invalid backup name: " + backupName);
+        }
+    }
     
     public static boolean createCompressedBackup() {
         try {
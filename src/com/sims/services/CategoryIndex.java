@@ -0,0 +1,118 @@
+package com.sims.services;
+
+import com.sims.models.Item;
+import java.util.*;
+
+// Case-insensitive category index with running item counts and stock value.
+// Each item's last indexed contribution is remembered, because callers mutate
+// items in place before handing them back to InventoryManager.updateItem.
+class CategoryIndex {
+    private static final class Category {
+        final String name;
+        final Map<String, Item> items = new LinkedHashMap<>();
+        double stockValue;
+
+        Category(String name) {
+            this.name = name;
+        }
+    }
+
+    private static final class Contribution {
+        final String key;
+        final double stockValue;
+
+        Contribution(String key, double stockValue) {
+            this.key = key;
+            this.stockValue = stockValue;
+        }
+    }
+
+    final private Map<String, Category> categories = new LinkedHashMap<>();
+    final private Map<String, Contribution> contributions = new HashMap<>();
+
+    void put(Item item) {
+        remove(item.getId());
+
+        String name = displayName(item.getCategory());
+        String key = key(name);
+        double value = item.getPrice() * item.getQuantity();
+
+        Category category = categories.computeIfAbsent(key, k -> new Category(name));
+        category.items.put(item.getId(), item);
+        category.stockValue += value;
+        contributions.put(item.getId(), new Contribution(key, value));
+    }
+
+    void remove(String id) {
+        Contribution previous = contributions.remove(id);
+        if (previous == null) {
+            return;
+        }
+
+        Category category = categories.get(previous.key);
+        category.items.remove(id);
+        if (category.items.isEmpty()) {
+            categories.remove(previous.key);
+        } else {
+            category.stockValue -= previous.stockValue;
+        }
+    }
+
+    // Categories differing only in case are one category, shown under the
+    // first spelling seen; a missing category is "". AnalyticsAccumulator
+    // groups the same way.
+    static String displayName(String category) {
+        return category == null ? "" : category;
+    }
+
+    static String key(String category) {
+        return displayName(category).toLowerCase();
+    }
+
+    List<Item> getItems(String name) {
+        Category category = name == null ? null : categories.get(name.toLowerCase());
+        return category == null ? new ArrayList<>() : new ArrayList<>(category.items.values());
+    }
+
+    Set<String> getNames() {
+        Set<String> names = new LinkedHashSet<>();
+        for (Category category : categories.values()) {
+            names.add(category.name);
+        }
+        return names;
+    }
+
+    Map<String, Integer> getCounts() {
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        for (Category category : categories.values()) {
+            counts.put(category.name, category.items.size());
+        }
+        return counts;
+    }
+
+    Map<String, Double> getValues() {
+        Map<String, Double> values = new LinkedHashMap<>();
+        for (Category category : categories.values()) {
+            values.put(category.name, category.stockValue);
+        }
+        return values;
+    }
+
+    List<Map.Entry<String, Double>> getTopByValue(int limit) {
+        PriorityQueue<Category> top = new PriorityQueue<>(Comparator.comparingDouble(c -> c.stockValue));
+        for (Category category : categories.values()) {
+            top.add(category);
+            if (top.size() > limit) {
+                top.poll();
+            }
+        }
+
+        List<Map.Entry<String, Double>> result = new ArrayList<>();
+        while (!top.isEmpty()) {
+            Category category = top.poll();
+            result.add(new AbstractMap.SimpleImmutableEntry<>(category.name, category.stockValue));
+        }
+        Collections.reverse(result);
+        return result;
+    }
+}
@@ -0,0 +1,392 @@
+package com.sims.services;
+
+import com.sims.models.Item;
+import com.sims.utils.InputValidator;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.stream.IntStream;
+import java.util.zip.GZIPInputStream;
+
+// Reads files in the layout ExportUtils.exportToCSV writes, gzipped if the
+// name ends in .gz. Columns are matched by the header row, so exports of a
+// subset of columns import too; a file without a header must have the full
+// column order. Columns a file lacks keep an existing item's values. The
+// file is streamed in chunks, so memory stays bounded however many rows it has:
+// each chunk is parsed sequentially (quoted fields may span lines), validated
+// in parallel, then upserted through one InventoryManager batch.
+public class CsvImporter {
+    private static final int CHUNK_SIZE = 10_000;
+    private static final int MAX_REPORTED_ERRORS = 100;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final int MIN_COLUMNS = 7;
+    private static final List<ExportUtils.Column> REQUIRED_COLUMNS = List.of(
+        ExportUtils.Column.NAME, ExportUtils.Column.CATEGORY, ExportUtils.Column.QUANTITY, ExportUtils.Column.PRICE);
+
+    public static class ImportResult {
+        private int added;
+        private int updated;
+        private int failed;
+        final private List<String> errors = new ArrayList<>();
+
+        private void fail(long line, String message) {
+            failed++;
+            if (errors.size() < MAX_REPORTED_ERRORS) {
+                errors.add("Line " + line + ": " + message);
+            }
+        }
+
+        public int getAdded() { return added; }
+        public int getUpdated() { return updated; }
+        public int getFailed() { return failed; }
+        // Only the first MAX_REPORTED_ERRORS failures are kept.
+        public List<String> getErrors() { return errors; }
+    }
+
+    private static final class Record {
+        final long line;
+        final List<String> fields;
+
+        Record(long line, List<String> fields) {
+            this.line = line;
+            this.fields = fields;
+        }
+    }
+
+    // Where each column is in a record, or -1 if the file does not have it.
+    private static final class Layout {
+        final int[] positions = new int[ExportUtils.Column.values().length];
+        final int minFields;
+
+        // No header: the full export order, of which the first MIN_COLUMNS
+        // columns must be present.
+        Layout() {
+            for (int i = 0; i < positions.length; i++) {
+                positions[i] = i;
+            }
+            minFields = MIN_COLUMNS;
+        }
+
+        Layout(List<String> header) throws IOException {
+            Arrays.fill(positions, -1);
+            for (int i = 0; i < header.size(); i++) {
+                ExportUtils.Column column = ExportUtils.Column.fromHeader(header.get(i));
+                if (column == null) {
+                    throw new IOException("Unknown column '" + header.get(i).trim() + "'");
+                }
+                if (positions[column.ordinal()] >= 0) {
+                    throw new IOException("Duplicate column '" + column.getHeader() + "'");
+                }
+                positions[column.ordinal()] = i;
+            }
+            List<String> missing = new ArrayList<>();
+            int last = 0;
+            for (ExportUtils.Column column : REQUIRED_COLUMNS) {
+                if (positions[column.ordinal()] < 0) {
+                    missing.add(column.getHeader());
+                }
+                last = Math.max(last, positions[column.ordinal()]);
+            }
+            if (!missing.isEmpty()) {
+                throw new IOException("Missing required columns: " + String.join(", ", missing));
+            }
+            minFields = last + 1;
+        }
+
+        static boolean isHeader(List<String> fields) {
+            return ExportUtils.Column.fromHeader(fields.get(0)) != null;
+        }
+
+        // The field, or null if the file or this record does not have it.
+        String get(List<String> fields, ExportUtils.Column column) {
+            int position = positions[column.ordinal()];
+            return position >= 0 && position < fields.size() ? fields.get(position) : null;
+        }
+    }
+
+    private static final class Row {
+        final long line;
+        String error;
+        String id;
+        String name;
+        String category;
+        int quantity;
+        double price;
+        // Null when the file has no such column.
+        String description;
+        Integer threshold;
+        String barcode;
+        LocalDate expiryDate;
+        boolean hasExpiry;
+
+        Row(long line) {
+            this.line = line;
+        }
+    }
+
+    public static ImportResult importCSV(InventoryManager manager, String filename) throws IOException {
+        ImportResult result = new ImportResult();
+        try (InputStream fileStream = new FileInputStream(filename);
+             InputStream stream = filename.endsWith(".gz") ? new GZIPInputStream(fileStream, BUFFER_SIZE) : fileStream;
+             Reader reader = new InputStreamReader(stream, StandardCharsets.UTF_8)) {
+            RecordReader records = new RecordReader(reader);
+            List<Record> chunk = new ArrayList<>(CHUNK_SIZE);
+            Layout layout = null;
+            Record record;
+            while ((record = records.next()) != null) {
+                if (isBlank(record.fields)) {
+                    continue;
+                }
+                if (layout == null) {
+                    if (Layout.isHeader(record.fields)) {
+                        layout = new Layout(record.fields);
+                        continue;
+                    }
+                    layout = new Layout();
+                }
+                chunk.add(record);
+                if (chunk.size() == CHUNK_SIZE) {
+                    importChunk(manager, layout, chunk, result);
+                    chunk.clear();
+                }
+            }
+            importChunk(manager, layout, chunk, result);
+        }
+        return result;
+    }
+
+    private static void importChunk(InventoryManager manager, Layout layout, List<Record> chunk,
+                                    ImportResult result) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        Row[] rows = new Row[chunk.size()];
+        IntStream.range(0, rows.length).parallel().forEach(i -> rows[i] = parse(layout, chunk.get(i)));
+
+        // Rows are resolved in file order so that a later row for the same
+        // ID updates the item an earlier one added.
+        Map<String, Item> staged = new HashMap<>();
+        List<Row> accepted = new ArrayList<>(rows.length);
+        List<Item> targets = new ArrayList<>(rows.length);
+        List<Boolean> adds = new ArrayList<>(rows.length);
+        for (Row row : rows) {
+            if (row.error != null) {
+                result.fail(row.line, row.error);
+                continue;
+            }
+            Item existing = row.id == null ? null : staged.getOrDefault(row.id, manager.getItem(row.id));
+            if (existing != null && row.quantity < existing.getReserved()) {
+                result.fail(row.line, "quantity " + row.quantity + " is below the "
+                    + existing.getReserved() + " units reserved");
+                continue;
+            }
+            Item item = toItem(row, existing);
+            staged.put(item.getId(), item);
+            accepted.add(row);
+            targets.add(item);
+            adds.add(existing == null);
+        }
+
+        try {
+            manager.batch(batch -> {
+                for (int i = 0; i < targets.size(); i++) {
+                    if (adds.get(i)) {
+                        batch.add(targets.get(i));
+                    } else {
+                        batch.update(targets.get(i));
+                    }
+                }
+            });
+            for (boolean add : adds) {
+                if (add) {
+                    result.added++;
+                } else {
+                    result.updated++;
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            // Something in the chunk clashes (usually a barcode), so apply it
+            // row by row to find out which rows.
+            for (int i = 0; i < targets.size(); i++) {
+                Item item = targets.get(i);
+                if (adds.get(i) ? manager.addItem(item) : manager.updateItem(item)) {
+                    if (adds.get(i)) {
+                        result.added++;
+                    } else {
+                        result.updated++;
+                    }
+                } else {
+                    result.fail(accepted.get(i).line, "conflicts with an existing item ID or barcode");
+                }
+            }
+        }
+    }
+
+    private static Item toItem(Row row, Item existing) {
+        String id = row.id;
+        String barcode = row.barcode;
+        LocalDate dateAdded = existing != null ? existing.getDateAdded() : LocalDate.now();
+        String description = row.description;
+        int threshold = row.threshold != null ? row.threshold : 0;
+        LocalDate expiryDate = row.expiryDate;
+        if (existing != null) {
+            barcode = barcode != null ? barcode : existing.getBarcode();
+            description = description != null ? description : existing.getDescription();
+            threshold = row.threshold != null ? row.threshold : existing.getLowStockThreshold();
+            expiryDate = row.hasExpiry ? expiryDate : existing.getExpiryDate();
+        }
+        description = description != null ? description : "";
+        if (id == null || barcode == null) {
+            Item generated = new Item(row.name, row.category, row.quantity, row.price, description, threshold);
+            id = id != null ? id : generated.getId();
+            barcode = barcode != null ? barcode : generated.getBarcode();
+        }
+
+        Item item = new Item(id, barcode, dateAdded, row.name, row.category, row.quantity,
+                             row.price, description, threshold, expiryDate);
+        if (existing != null && existing.getReserved() > 0) {
+            item.compareAndSetReserved(0, existing.getReserved());
+        }
+        return item;
+    }
+
+    private static Row parse(Layout layout, Record record) {
+        Row row = new Row(record.line);
+        List<String> fields = record.fields;
+        if (fields.size() < layout.minFields) {
+            row.error = "expected at least " + layout.minFields + " columns, found " + fields.size();
+            return row;
+        }
+
+        row.id = emptyToNull(layout.get(fields, ExportUtils.Column.ID));
+        row.name = layout.get(fields, ExportUtils.Column.NAME).trim();
+        row.category = layout.get(fields, ExportUtils.Column.CATEGORY).trim();
+        row.description = layout.get(fields, ExportUtils.Column.DESCRIPTION);
+        row.barcode = emptyToNull(layout.get(fields, ExportUtils.Column.BARCODE));
+        String quantity = layout.get(fields, ExportUtils.Column.QUANTITY).trim();
+        String price = layout.get(fields, ExportUtils.Column.PRICE).trim();
+        String threshold = layout.get(fields, ExportUtils.Column.LOW_STOCK_THRESHOLD);
+        String expiry = layout.get(fields, ExportUtils.Column.EXPIRY_DATE);
+        row.hasExpiry = expiry != null;
+        expiry = emptyToNull(expiry);
+
+        if (!InputValidator.isValidString(row.name, 1, 100)) {
+            row.error = "name must be 1-100 characters";
+        } else if (!InputValidator.isValidString(row.category, 1, 50)) {
+            row.error = "category must be 1-50 characters";
+        } else if (!InputValidator.isValidInteger(quantity)
+                || !InputValidator.isNonNegativeInteger(row.quantity = Integer.parseInt(quantity))) {
+            row.error = "invalid quantity '" + quantity + "'";
+        } else if (!InputValidator.isValidNumber(price)
+                || !Double.isFinite(row.price = Double.parseDouble(price)) || row.price < 0) {
+            row.error = "invalid price '" + price + "'";
+        } else if (threshold != null && !InputValidator.isValidInteger(threshold.trim())) {
+            row.error = "invalid low stock threshold '" + threshold.trim() + "'";
+        } else if (threshold != null) {
+            row.threshold = Integer.parseInt(threshold.trim());
+        }
+        if (row.error == null && expiry != null) {
+            try {
+                row.expiryDate = LocalDate.parse(expiry);
+            } catch (DateTimeParseException e) {
+                row.error = "invalid expiry date '" + expiry + "', expected YYYY-MM-DD";
+            }
+        }
+        return row;
+    }
+
+    private static String emptyToNull(String value) {
+        if (value == null) {
+            return null;
+        }
+        String trimmed = value.trim();
+        return trimmed.isEmpty() ? null : trimmed;
+    }
+
+    private static boolean isBlank(List<String> fields) {
+        for (String field : fields) {
+            if (!field.trim().isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // RFC 4180 style: fields may be quoted, quotes inside are doubled, and a
+    // quoted field may contain commas and line breaks.
+    private static final class RecordReader {
+        final private Reader reader;
+        final private char[] buffer = new char[BUFFER_SIZE];
+        final private StringBuilder field = new StringBuilder();
+        private int position;
+        private int limit;
+        private long line = 1;
+
+        RecordReader(Reader reader) {
+            this.reader = reader;
+        }
+
+        // Buffered here rather than through BufferedReader, whose read() takes
+        // a lock for every character.
+        private int read() throws IOException {
+            if (position == limit) {
+                limit = reader.read(buffer, 0, buffer.length);
+                position = 0;
+                if (limit <= 0) {
+                    limit = 0;
+                    return -1;
+                }
+            }
+            return buffer[position++];
+        }
+
+        Record next() throws IOException {
+            int c = read();
+            if (c < 0) {
+                return null;
+            }
+
+            long startLine = line;
+            List<String> fields = new ArrayList<>(ExportUtils.Column.values().length);
+            boolean inQuotes = false;
+            boolean quoteSeen = false;
+            field.setLength(0);
+            for (; c >= 0; c = read()) {
+                if (inQuotes) {
+                    if (c == '"') {
+                        inQuotes = false;
+                        quoteSeen = true;
+                        continue;
+                    }
+                    if (c == '\n') {
+                        line++;
+                    }
+                    field.append((char) c);
+                    continue;
+                }
+
+                if (c == '"') {
+                    // A doubled quote inside a quoted field is a literal quote.
+                    if (quoteSeen) {
+                        field.append('"');
+                    }
+                    inQuotes = true;
+                } else if (c == ',') {
+                    fields.add(field.toString());
+                    field.setLength(0);
+                } else if (c == '\n') {
+                    line++;
+                    break;
+                } else if (c != '\r') {
+                    field.append((char) c);
+                }
+                quoteSeen = false;
+            }
+            fields.add(field.toString());
+            return new Record(startLine, fields);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.sims.services;
+
+import java.time.LocalDate;
+
+// Builds the dashboard figures from the aggregates and indexes InventoryManager
+// keeps, and reuses the result until the inventory changes, the day rolls over
+// or the expiry window is changed.
+public class DashboardService {
+    private static final int TOP_CATEGORIES = 5;
+    
+    private static final class Cached {
+        final InventoryManager source;
+        final DashboardSnapshot snapshot;
+        
+        Cached(InventoryManager source, DashboardSnapshot snapshot) {
+            this.source = source;
+            this.snapshot = snapshot;
+        }
+    }
+    
+    private static volatile Cached cached;
+    
+    public static DashboardSnapshot getSnapshot(InventoryManager inventoryManager) {
+        LocalDate today = LocalDate.now();
+        long version = inventoryManager.getVersion();
+        int expiryDays = AlertManager.getExpiryWarningDays();
+        Cached last = cached;
+        if (last != null && last.source == inventoryManager
+                && last.snapshot.getVersion() == version && last.snapshot.getDate().equals(today)
+                && last.snapshot.getExpiryWarningDays() == expiryDays) {
+            return last.snapshot;
+        }
+        
+        // Any change made while this is computed bumps the version past the
+        // one recorded here, so a mixed result is never served twice.
+        InventoryStats stats = inventoryManager.getStats();
+        
+        DashboardSnapshot snapshot = new DashboardSnapshot(version, today, expiryDays, stats.getCount(),
+            inventoryManager.getCategories().size(), stats.getTotalValue(),
+            stats.getLowInStockCount(), stats.getLevelCount(InventoryStats.OUT_OF_STOCK),
+            inventoryManager.getExpiringCount(expiryDays), inventoryManager.getExpiredCount(),
+            inventoryManager.getTopValueCategories(TOP_CATEGORIES));
+        cached = new Cached(inventoryManager, snapshot);
+        return snapshot;
+    }
+}
@@ -0,0 +1,51 @@
+package com.sims.services;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+// Figures shown on the login dashboard, as of one inventory version and day.
+public class DashboardSnapshot {
+    final private long version;
+    final private LocalDate date;
+    final private int expiryWarningDays;
+    final private int totalItems;
+    final private int totalCategories;
+    final private double totalValue;
+    final private int lowStockItems;
+    final private int outOfStockItems;
+    final private int expiringItems;
+    final private int expiredItems;
+    final private List<Map.Entry<String, Double>> topCategories;
+    
+    DashboardSnapshot(long version, LocalDate date, int expiryWarningDays, int totalItems, int totalCategories, double totalValue,
+                      int lowStockItems, int outOfStockItems, int expiringItems, int expiredItems,
+                      List<Map.Entry<String, Double>> topCategories) {
+        this.version = version;
+        this.date = date;
+        this.expiryWarningDays = expiryWarningDays;
+        this.totalItems = totalItems;
+        this.totalCategories = totalCategories;
+        this.totalValue = totalValue;
+        this.lowStockItems = lowStockItems;
+        this.outOfStockItems = outOfStockItems;
+        this.expiringItems = expiringItems;
+        this.expiredItems = expiredItems;
+        this.topCategories = List.copyOf(topCategories);
+    }
+    
+    long getVersion() { return version; }
+    LocalDate getDate() { return date; }
+    
+    public int getExpiryWarningDays() { return expiryWarningDays; }
+    
+    public int getTotalItems() { return totalItems; }
+    public int getTotalCategories() { return totalCategories; }
+    public double getTotalValue() { return totalValue; }
+    public double getAverageItemValue() { return totalItems > 0 ? totalValue / totalItems : 0; }
+    public int getLowStockItems() { return lowStockItems; }
+    public int getOutOfStockItems() { return outOfStockItems; }
+    public int getExpiringItems() { return expiringItems; }
+    public int getExpiredItems() { return expiredItems; }
+    public List<Map.Entry<String, Double>> getTopCategories() { return topCategories; }
+}
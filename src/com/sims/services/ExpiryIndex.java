@@ -0,0 +1,92 @@
+package com.sims.services;
+
+import com.sims.models.Item;
+import java.time.LocalDate;
+import java.util.*;
+
+// Items with an expiry date, bucketed by epoch day in date order, so the
+// expired / expiring-within-N-days / next-to-expire queries only visit the
+// days they ask about. Like CategoryIndex, each item's indexed day is
+// remembered because items are edited in place before being re-indexed.
+class ExpiryIndex {
+    final private TreeMap<Long, Map<String, Item>> days = new TreeMap<>();
+    final private Map<String, Long> indexedDays = new HashMap<>();
+
+    void put(Item item) {
+        remove(item.getId());
+        if (item.getExpiryDate() == null) {
+            return;
+        }
+        long day = item.getExpiryDate().toEpochDay();
+        days.computeIfAbsent(day, d -> new LinkedHashMap<>()).put(item.getId(), item);
+        indexedDays.put(item.getId(), day);
+    }
+
+    void remove(String id) {
+        Long day = indexedDays.remove(id);
+        if (day == null) {
+            return;
+        }
+        Map<String, Item> bucket = days.get(day);
+        bucket.remove(id);
+        if (bucket.isEmpty()) {
+            days.remove(day);
+        }
+    }
+
+    // Expired means the expiry date is today or earlier, as in Item.isExpired.
+    List<Item> getExpired(LocalDate today) {
+        return collect(days.headMap(today.toEpochDay(), true), Integer.MAX_VALUE);
+    }
+
+    // Expiring means from tomorrow up to `window` days ahead, as in Item.isExpiring.
+    List<Item> getExpiring(LocalDate today, int window) {
+        return collect(expiringDays(today, window), Integer.MAX_VALUE);
+    }
+
+    List<Item> getNextToExpire(LocalDate today, int limit) {
+        return collect(days.tailMap(today.toEpochDay(), false), limit);
+    }
+
+    // Items whose expiry day is after `fromDay` and no later than `toDay`.
+    List<Item> getBetween(long fromDay, long toDay) {
+        if (fromDay >= toDay) {
+            return new ArrayList<>();
+        }
+        return collect(days.subMap(fromDay, false, toDay, true), Integer.MAX_VALUE);
+    }
+
+    int countExpired(LocalDate today) {
+        return count(days.headMap(today.toEpochDay(), true));
+    }
+
+    int countExpiring(LocalDate today, int window) {
+        return count(expiringDays(today, window));
+    }
+
+    private SortedMap<Long, Map<String, Item>> expiringDays(LocalDate today, int window) {
+        long from = today.toEpochDay();
+        return window <= 0 ? Collections.emptySortedMap() : days.subMap(from, false, from + window, true);
+    }
+
+    private static List<Item> collect(SortedMap<Long, Map<String, Item>> range, int limit) {
+        List<Item> result = new ArrayList<>();
+        for (Map<String, Item> bucket : range.values()) {
+            for (Item item : bucket.values()) {
+                if (result.size() == limit) {
+                    return result;
+                }
+                result.add(item);
+            }
+        }
+        return result;
+    }
+
+    private static int count(SortedMap<Long, Map<String, Item>> range) {
+        int count = 0;
+        for (Map<String, Item> bucket : range.values()) {
+            count += bucket.size();
+        }
+        return count;
+    }
+}
@@ -1,15 +1,68 @@
 package com.sims.services;
 
 import com.sims.models.Item;
+import com.sims.models.Transaction;
 import java.io.*;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.*;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.zip.GZIPOutputStream;
 
 public class ExportUtils {
-    private static final String TRANSACTIONS_FILE = "data/transactions.log";
-    private static final String BACKUP_DIR = "data/backups/";
     private static final String EXPORTS_DIR = "exports/";
+    private static final int EXPORT_BUFFER_SIZE = 256 * 1024;
     
+    public enum Column {
+        ID("ID"),
+        NAME("Name"),
+        CATEGORY("Category"),
+        QUANTITY("Quantity"),
+        PRICE("Price"),
+        DESCRIPTION("Description"),
+        LOW_STOCK_THRESHOLD("LowStockThreshold"),
+        BARCODE("Barcode"),
+        EXPIRY_DATE("ExpiryDate");
+        
+        final private String header;
+        
+        Column(String header) {
+            this.header = header;
+        }
+        
+        public String getHeader() {
+            return header;
+        }
+        
+        public static Column fromHeader(String header) {
+            for (Column column : values()) {
+                if (column.header.equalsIgnoreCase(header.trim())) {
+                    return column;
+                }
+            }
+            return null;
+        }
+    }
+    
+    // Written in the platform charset, as FileWriter did before, so existing
+    // consumers of this export see the same bytes.
     public static boolean exportToCSV(List<Item> items, String filename) {
+        return exportToCSV(items::forEach, filename, false, Arrays.asList(Column.values()), Charset.defaultCharset());
+    }
+    
+    // Streams the catalog straight from the manager; only item references
+    // are copied, not rows or strings.
+    public static boolean exportToCSV(InventoryManager manager, String filename, boolean gzip, List<Column> columns) {
+        return exportToCSV(manager::forEachItem, filename, gzip, columns, StandardCharsets.UTF_8);
+    }
+    
+    private static boolean exportToCSV(Consumer<Consumer<Item>> source, String filename, boolean gzip,
+                                       List<Column> columns, Charset charset) {
         try {
             File exportsDir = new File(EXPORTS_DIR);
             if (!exportsDir.exists()) {
@@ -18,22 +71,21 @@ public class ExportUtils {
 
             File file = new File(EXPORTS_DIR + filename);
             
-            try (PrintWriter writer = new PrintWriter(new FileWriter(file))) {
-                writer.println("ID,Name,Category,Quantity,Price,Description,LowStockThreshold,Barcode,ExpiryDate");
-                writer.println(" ");
-                
-                for (Item item : items) {
-                    writer.printf("%s,%s,%s,%d,%.2f,%s,%d,%s,%s%n",
-                        escapeCSV(item.getId()),
-                        escapeCSV(item.getName()),
-                        escapeCSV(item.getCategory()),
-                        item.getQuantity(),
-                        item.getPrice(),
-                        escapeCSV(item.getDescription()),
-                        item.getLowStockThreshold(),
-                        escapeCSV(item.getBarcode()),
-                        item.getExpiryDate() != null ? item.getExpiryDate().toString() : ""
-                    );
+            try (OutputStream fileStream = new FileOutputStream(file);
+                 OutputStream stream = gzip ? new GZIPOutputStream(fileStream, EXPORT_BUFFER_SIZE) : fileStream;
+                 Writer writer = new BufferedWriter(new OutputStreamWriter(stream, charset), EXPORT_BUFFER_SIZE)) {
+                CsvRowWriter rows = new CsvRowWriter(writer, columns);
+                rows.writeHeader();
+                try {
+                    source.accept(item -> {
+                        try {
+                            rows.write(item);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    });
+                } catch (UncheckedIOException e) {
+                    throw e.getCause();
                 }
             }
             
@@ -46,25 +98,141 @@ public class ExportUtils {
         }
     }
     
-    private static String escapeCSV(String value) {
-        if (value == null) return "";
-        if (value.contains(",") || value.contains("\"") || value.contains("\n")) {
-            return "\"" + value.replace("\"", "\"\"") + "\"";
+    // Formats rows into one reused buffer instead of going through
+    // String.format, which allocates a Formatter and several strings per row.
+    private static final class CsvRowWriter {
+        final private Writer writer;
+        final private Column[] columns;
+        final private StringBuilder row = new StringBuilder(256);
+        private char[] chars = new char[256];
+        
+        CsvRowWriter(Writer writer, List<Column> columns) {
+            this.writer = writer;
+            this.columns = columns.toArray(new Column[0]);
+        }
+        
+        void writeHeader() throws IOException {
+            row.setLength(0);
+            for (int i = 0; i < columns.length; i++) {
+                if (i > 0) {
+                    row.append(',');
+                }
+                row.append(columns[i].getHeader());
+            }
+            row.append(System.lineSeparator()).append(' ').append(System.lineSeparator());
+            flushRow();
+        }
+        
+        void write(Item item) throws IOException {
+            row.setLength(0);
+            for (int i = 0; i < columns.length; i++) {
+                if (i > 0) {
+                    row.append(',');
+                }
+                switch (columns[i]) {
+                    case ID -> appendEscaped(item.getId());
+                    case NAME -> appendEscaped(item.getName());
+                    case CATEGORY -> appendEscaped(item.getCategory());
+                    case QUANTITY -> row.append(item.getQuantity());
+                    case PRICE -> appendPrice(item.getPrice());
+                    case DESCRIPTION -> appendEscaped(item.getDescription());
+                    case LOW_STOCK_THRESHOLD -> row.append(item.getLowStockThreshold());
+                    case BARCODE -> appendEscaped(item.getBarcode());
+                    case EXPIRY_DATE -> appendDate(item.getExpiryDate());
+                }
+            }
+            row.append(System.lineSeparator());
+            flushRow();
+        }
+        
+        private void flushRow() throws IOException {
+            int length = row.length();
+            if (chars.length < length) {
+                chars = new char[Math.max(length, chars.length * 2)];
+            }
+            row.getChars(0, length, chars, 0);
+            writer.write(chars, 0, length);
+        }
+        
+        // Fields containing a comma, quote or newline are quoted, with quotes doubled.
+        private void appendEscaped(String value) {
+            if (value == null) {
+                return;
+            }
+            boolean quote = false;
+            for (int i = 0; i < value.length() && !quote; i++) {
+                char c = value.charAt(i);
+                quote = c == ',' || c == '"' || c == '\n';
+            }
+            if (!quote) {
+                row.append(value);
+                return;
+            }
+            row.append('"');
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == '"') {
+                    row.append('"');
+                }
+                row.append(c);
+            }
+            row.append('"');
+        }
+        
+        // Prices with a whole number of cents are written directly; anything
+        // else goes through BigDecimal, which rounds like %.2f does. NaN and
+        // the infinities are written as %.2f writes them.
+        private void appendPrice(double price) {
+            if (!Double.isFinite(price)) {
+                row.append(price);
+                return;
+            }
+            // %.2f keeps the sign of -0.0 and of negatives that round to zero.
+            if (price < 0 || 1 / price < 0) {
+                row.append('-');
+                price = -price;
+            }
+            double cents = price * 100;
+            double rounded = Math.rint(cents);
+            if (Math.abs(cents - rounded) > 1e-6 || rounded >= 1e15) {
+                row.append(new BigDecimal(Double.toString(price)).setScale(2, RoundingMode.HALF_UP).toPlainString());
+                return;
+            }
+            long value = (long) rounded;
+            long fraction = value % 100;
+            row.append(value / 100).append('.');
+            if (fraction < 10) {
+                row.append('0');
+            }
+            row.append(fraction);
+        }
+        
+        private void appendDate(LocalDate date) {
+            if (date == null) {
+                return;
+            }
+            int year = date.getYear();
+            if (year < 1000 || year > 9999) {
+                row.append(date);
+                return;
+            }
+            row.append(year).append('-');
+            appendTwoDigits(date.getMonthValue());
+            row.append('-');
+            appendTwoDigits(date.getDayOfMonth());
+        }
+        
+        private void appendTwoDigits(int value) {
+            if (value < 10) {
+                row.append('0');
+            }
+            row.append(value);
         }
-        return value;
     }
     
     public static boolean createBackup(String backupName) {
         try {
-            File backupDir = new File(BACKUP_DIR);
-            backupDir.mkdirs();
-            
-            // Copy data files to backup directory
-            File sourceDir = new File("data");
-            File targetDir = new File(BACKUP_DIR + backupName);
-            targetDir.mkdirs();
-            
-            copyDirectory(sourceDir, targetDir);
+            BackupService.createBackup(backupName);
             return true;
         } catch (IOException e) {
             System.err.println("Error creating backup: " + e.getMessage());
@@ -72,64 +240,28 @@ public class ExportUtils {
         }
     }
     
-    private static void copyDirectory(File source, File target) throws IOException {
-        if (source.isDirectory()) {
-            if (!target.exists()) {
-                target.mkdirs();
-            }
-            
-            String[] children = source.list();
-            if (children != null) {
-                for (String child : children) {
-                    if (!child.equals("backups")) {
-                        copyDirectory(new File(source, child), new File(target, child));
-                    }
-                }
-            }
-        } else {
-            try (FileInputStream fis = new FileInputStream(source);
-                 FileOutputStream fos = new FileOutputStream(target)) {
-                byte[] buffer = new byte[1024];
-                int length;
-                while ((length = fis.read(buffer)) > 0) {
-                    fos.write(buffer, 0, length);
-                }
-            }
-        }
+    public static void logTransaction(String username, String action, String details) {
+        TransactionLogWriter.append(new Transaction(username, action, details));
     }
     
-    public static void logTransaction(String logEntry) {
-        try {
-            File logFile = new File(TRANSACTIONS_FILE);
-            
-            File parentDir = logFile.getParentFile();
-            if (parentDir != null && !parentDir.exists()) {
-                parentDir.mkdirs();
-            }
-            
-            try (PrintWriter writer = new PrintWriter(new FileWriter(logFile, true))) {
-                writer.println(logEntry);
-            }
-        } catch (IOException e) {
-            System.err.println("Error logging transaction: " + e.getMessage());
-        }
+    public static void logTransaction(String username, String action, String itemId, String details) {
+        TransactionLogWriter.append(new Transaction(username, action, itemId, details));
     }
     
-    public static List<String> getTransactionLogs() {
-        List<String> logs = new ArrayList<>();
-        try {
-            File logFile = new File(TRANSACTIONS_FILE);
-            if (logFile.exists()) {
-                try (BufferedReader reader = new BufferedReader(new FileReader(logFile))) {
-                    String line;
-                    while ((line = reader.readLine()) != null) {
-                        logs.add(line);
-                    }
-                }
-            }
-        } catch (IOException e) {
-            System.err.println("Error reading transaction logs: " + e.getMessage());
-        }
-        return logs;
+    // The last `count` lines of the transaction log, oldest first.
+    public static List<String> getRecentTransactionLogs(int count) {
+        return TransactionLogWriter.getRecent(count);
+    }
+    
+    public static List<String> getTransactionLogs(LocalDateTime from, LocalDateTime to, int limit) {
+        return TransactionLogWriter.getBetween(from, to, limit);
+    }
+    
+    public static List<String> getTransactionLogsByUser(String username, int limit) {
+        return TransactionLogWriter.getByUser(username, limit);
+    }
+    
+    public static void followTransactionLog(Consumer<String> action, BooleanSupplier stopped) {
+        TransactionLogWriter.follow(action, stopped);
     }
 }
@@ -0,0 +1,36 @@
+package com.sims.services;
+
+import com.sims.models.Item;
+
+// Published by InventoryManager after a change has been applied. The state
+// transitions (low stock, out of stock, restocked, expiring, expired) are
+// reported once per crossing, not for every change that leaves them as is.
+public class InventoryEvent {
+    public enum Type {
+        ITEM_ADDED,
+        ITEM_UPDATED,
+        ITEM_REMOVED,
+        STOCK_CHANGED,
+        LOW_STOCK,
+        OUT_OF_STOCK,
+        RESTOCKED,
+        EXPIRING,
+        EXPIRED
+    }
+    
+    final private Type type;
+    final private Item item;
+    
+    InventoryEvent(Type type, Item item) {
+        this.type = type;
+        this.item = item;
+    }
+    
+    public Type getType() { return type; }
+    public Item getItem() { return item; }
+    
+    @Override
+    public String toString() {
+        return type + " " + item.getId();
+    }
+}
@@ -2,111 +2,998 @@ package com.sims.services;
 
 import com.sims.models.Item;
 import com.sims.utils.FileManager;
+import com.sims.utils.ItemJournal;
+import com.sims.utils.MappedRecordStore;
+import com.sims.utils.TextIndex;
+import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.time.LocalDate;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
+// Thread-safe: lookups, searches and reports share a read lock, mutations take
+// the write lock. Items handed out are the live objects, so callers should
+// pass changes back through updateItem rather than share edits across threads.
 public class InventoryManager {
-    private List<Item> items;
+    final private ReadWriteLock lock = new ReentrantReadWriteLock();
+    final private Map<String, Item> items;
+    final private Map<String, Item> itemsById;
+    final private Map<String, Item> itemsByBarcode;
+    final private TextIndex searchIndex;
+    final private CategoryIndex categoryIndex;
+    final private InventoryStats stats;
+    final private ExpiryIndex expiryIndex;
+    final private LowStockIndex lowStockIndex;
+    final private Map<String, InventoryEvent.Type> stockStates = new ConcurrentHashMap<>();
+    final private Map<String, InventoryEvent.Type> expiryStates = new ConcurrentHashMap<>();
+    final private List<InventoryListener> listeners = new CopyOnWriteArrayList<>();
+    final private Queue<InventoryEvent> pendingEvents = new ConcurrentLinkedQueue<>();
+    final private Object expiryCheckLock = new Object();
+    private LocalDate expiryCheckedOn = LocalDate.now();
+    private int expiryCheckedWindow = AlertManager.getExpiryWarningDays();
+    private ItemJournal journal;
+    final private List<ItemJournal.Entry> pendingEntries = new ArrayList<>();
+    final private Set<String> pendingStock = ConcurrentHashMap.newKeySet();
+    final private Set<String> staleStock = ConcurrentHashMap.newKeySet();
+    private boolean snapshotPending;
+    final private AtomicLong version = new AtomicLong();
     private static final String ITEMS_FILE = "data/items.dat";
+    private static final String JOURNAL_FILE = "data/items.journal";
+    private static final int MIN_COMPACTION_THRESHOLD = 1000;
     
     public InventoryManager() {
-        this.items = new ArrayList<>();
+        this.items = new LinkedHashMap<>();
+        this.itemsById = new ConcurrentHashMap<>();
+        this.itemsByBarcode = new HashMap<>();
+        this.searchIndex = new TextIndex();
+        this.categoryIndex = new CategoryIndex();
+        this.stats = new InventoryStats();
+        this.expiryIndex = new ExpiryIndex();
+        this.lowStockIndex = new LowStockIndex();
         loadItems();
+        openJournal();
+        if (items.isEmpty()) {
+            System.out.println("No existing inventory data found. Starting fresh.");
+        }
     }
     
     public boolean addItem(Item item) {
-        if (item != null && !items.contains(item)) {
-            items.add(item);
-            saveItems();
+        lock.writeLock().lock();
+        try {
+            if (item == null || items.containsKey(item.getId())) {
+                return false;
+            }
+            if (item.getBarcode() != null && itemsByBarcode.containsKey(item.getBarcode())) {
+                return false;
+            }
+            putItem(item);
+            persistPut(item);
             return true;
+        } finally {
+            lock.writeLock().unlock();
+            dispatchEvents();
         }
-        return false;
     }
     
     public Item getItem(String id) {
-        return items.stream()
-                   .filter(item -> item.getId().equals(id))
-                   .findFirst()
-                   .orElse(null);
+        lock.readLock().lock();
+        try {
+            return id == null ? null : items.get(id);
+        } finally {
+            lock.readLock().unlock();
+        }
     }
     
     public Item getItemByBarcode(String barcode) {
-        return items.stream()
-                   .filter(item -> item.getBarcode().equals(barcode))
-                   .findFirst()
-                   .orElse(null);
+        lock.readLock().lock();
+        try {
+            return barcode == null ? null : itemsByBarcode.get(barcode);
+        } finally {
+            lock.readLock().unlock();
+        }
     }
     
     public List<Item> getAllItems() {
-        return new ArrayList<>(items);
+        lock.readLock().lock();
+        try {
+            return new ArrayList<>(items.values());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    // Visits every item as of the call. Only the references are copied under
+    // the read lock, so a slow action (an export writing to disk) does not
+    // hold up writers.
+    public void forEachItem(Consumer<Item> action) {
+        Item[] snapshot;
+        lock.readLock().lock();
+        try {
+            snapshot = items.values().toArray(new Item[0]);
+        } finally {
+            lock.readLock().unlock();
+        }
+        for (Item item : snapshot) {
+            action.accept(item);
+        }
     }
     
     public List<Item> getItemsByCategory(String category) {
-        return items.stream()
-                   .filter(item -> item.getCategory().equalsIgnoreCase(category))
-                   .collect(Collectors.toList());
+        lock.readLock().lock();
+        try {
+            return categoryIndex.getItems(category);
+        } finally {
+            lock.readLock().unlock();
+        }
     }
     
     public List<Item> searchItems(String searchTerm) {
-        return items.stream()
-                   .filter(item -> item.getName().toLowerCase().contains(searchTerm.toLowerCase()) ||
-                                 item.getDescription().toLowerCase().contains(searchTerm.toLowerCase()))
-                   .collect(Collectors.toList());
+        return searchItems(searchTerm, Integer.MAX_VALUE);
+    }
+    
+    // Ranked: name matches before description matches, and within a field an
+    // exact match before a word prefix before a plain substring.
+    public List<Item> searchItems(String searchTerm, int limit) {
+        lock.readLock().lock();
+        try {
+            return searchIndex.search(searchTerm, limit).stream()
+                       .map(items::get)
+                       .collect(Collectors.toList());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    public List<Item> searchItemsByPrefix(String prefix, int limit) {
+        lock.readLock().lock();
+        try {
+            return searchIndex.searchPrefix(prefix, limit).stream()
+                       .map(items::get)
+                       .collect(Collectors.toList());
+        } finally {
+            lock.readLock().unlock();
+        }
     }
     
     public boolean updateItem(Item updatedItem) {
-        for (int i = 0; i < items.size(); i++) {
-            if (items.get(i).getId().equals(updatedItem.getId())) {
-                items.set(i, updatedItem);
-                saveItems();
-                return true;
+        lock.writeLock().lock();
+        try {
+            if (updatedItem == null || !items.containsKey(updatedItem.getId())) {
+                return false;
+            }
+            Item owner = updatedItem.getBarcode() == null ? null : itemsByBarcode.get(updatedItem.getBarcode());
+            if (owner != null && !owner.getId().equals(updatedItem.getId())) {
+                return false;
             }
+            putItem(updatedItem);
+            persistPut(updatedItem);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+            dispatchEvents();
         }
-        return false;
     }
     
     public boolean deleteItem(String id) {
-        boolean removed = items.removeIf(item -> item.getId().equals(id));
-        if (removed) {
-            saveItems();
+        lock.writeLock().lock();
+        try {
+            boolean removed = removeItem(id) != null;
+            if (removed) {
+                persistDelete(id);
+            }
+            return removed;
+        } finally {
+            lock.writeLock().unlock();
+            dispatchEvents();
+        }
+    }
+    
+    // Batches are all-or-nothing: every operation is checked against the
+    // inventory as the earlier operations in the batch would leave it, and
+    // only if all of them pass are they applied, under one write lock and
+    // handed to the persistence thread as a single journal write.
+    public static class Batch {
+        private static final int ADD = 0;
+        private static final int UPDATE = 1;
+        private static final int DELETE = 2;
+        
+        final private List<Integer> ops = new ArrayList<>();
+        final private List<Object> targets = new ArrayList<>();
+        
+        private Batch() {
+        }
+        
+        public Batch add(Item item) {
+            return record(ADD, item);
+        }
+        
+        public Batch update(Item item) {
+            return record(UPDATE, item);
+        }
+        
+        public Batch delete(String id) {
+            return record(DELETE, id);
+        }
+        
+        public int size() {
+            return ops.size();
+        }
+        
+        private Batch record(int op, Object target) {
+            ops.add(op);
+            targets.add(target);
+            return this;
+        }
+    }
+    
+    public boolean addItems(Collection<Item> newItems) {
+        return tryBatch(batch -> newItems.forEach(batch::add));
+    }
+    
+    public boolean updateItems(Collection<Item> updatedItems) {
+        return tryBatch(batch -> updatedItems.forEach(batch::update));
+    }
+    
+    public boolean deleteItems(Collection<String> ids) {
+        return tryBatch(batch -> ids.forEach(batch::delete));
+    }
+    
+    private boolean tryBatch(Consumer<Batch> body) {
+        try {
+            batch(body);
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+    
+    // Throws IllegalArgumentException naming every rejected operation, in
+    // which case nothing was changed.
+    public int batch(Consumer<Batch> body) {
+        Batch batch = new Batch();
+        body.accept(batch);
+        if (batch.size() == 0) {
+            return 0;
+        }
+        
+        lock.writeLock().lock();
+        try {
+            List<String> errors = validate(batch);
+            if (!errors.isEmpty()) {
+                throw new IllegalArgumentException("Batch rejected: " + String.join("; ", errors));
+            }
+            
+            boolean snapshot = batch.size() >= compactionThreshold();
+            List<ItemJournal.Entry> entries = new ArrayList<>(snapshot ? 0 : batch.size());
+            for (int i = 0; i < batch.size(); i++) {
+                if (batch.ops.get(i) == Batch.DELETE) {
+                    String id = (String) batch.targets.get(i);
+                    removeItem(id);
+                    if (!snapshot) {
+                        entries.add(ItemJournal.Entry.delete(id));
+                    }
+                } else {
+                    Item item = (Item) batch.targets.get(i);
+                    putItem(item);
+                    if (!snapshot) {
+                        entries.add(encodePut(item));
+                    }
+                }
+            }
+            
+            synchronized (pendingEntries) {
+                if (snapshot) {
+                    // Cheaper to rewrite the snapshot once than to journal
+                    // every row and then compact anyway.
+                    snapshotPending = true;
+                } else {
+                    for (ItemJournal.Entry entry : entries) {
+                        if (entry != null) {
+                            pendingEntries.add(entry);
+                        }
+                    }
+                }
+            }
+            PersistenceScheduler.markDirty(JOURNAL_FILE, this::flushPending);
+            return batch.size();
+        } finally {
+            lock.writeLock().unlock();
+            dispatchEvents();
+        }
+    }
+    
+    // Replays the batch against overlays of the id and barcode maps; a null
+    // overlay value means "removed earlier in this batch".
+    private List<String> validate(Batch batch) {
+        List<String> errors = new ArrayList<>();
+        Map<String, Item> staged = new HashMap<>();
+        Map<String, String> barcodeOwners = new HashMap<>();
+        
+        for (int i = 0; i < batch.size(); i++) {
+            int op = batch.ops.get(i);
+            Object target = batch.targets.get(i);
+            if (target == null) {
+                errors.add("#" + (i + 1) + ": missing " + (op == Batch.DELETE ? "item ID" : "item"));
+                continue;
+            }
+            
+            String id = op == Batch.DELETE ? (String) target : ((Item) target).getId();
+            Item current = staged.containsKey(id) ? staged.get(id) : items.get(id);
+            if (op == Batch.ADD && current != null) {
+                errors.add("#" + (i + 1) + ": duplicate item ID " + id);
+                continue;
+            }
+            if (op != Batch.ADD && current == null) {
+                errors.add("#" + (i + 1) + ": no item with ID " + id);
+                continue;
+            }
+            
+            String barcode = op == Batch.DELETE ? null : ((Item) target).getBarcode();
+            if (barcode != null) {
+                String owner;
+                if (barcodeOwners.containsKey(barcode)) {
+                    owner = barcodeOwners.get(barcode);
+                } else {
+                    Item existing = itemsByBarcode.get(barcode);
+                    owner = existing == null ? null : existing.getId();
+                }
+                if (owner != null && !owner.equals(id)) {
+                    errors.add("#" + (i + 1) + ": barcode " + barcode + " already belongs to " + owner);
+                    continue;
+                }
+            }
+            
+            if (current != null && current.getBarcode() != null) {
+                barcodeOwners.put(current.getBarcode(), null);
+            }
+            if (barcode != null) {
+                barcodeOwners.put(barcode, id);
+            }
+            staged.put(id, op == Batch.DELETE ? null : (Item) target);
+        }
+        return errors;
+    }
+    
+    // All in-memory changes go through putItem/removeItem so the secondary
+    // indexes can never drift from the item map.
+    private void putItem(Item item) {
+        Item previous = items.put(item.getId(), item);
+        itemsById.put(item.getId(), item);
+        if (previous != null && previous.getBarcode() != null) {
+            itemsByBarcode.remove(previous.getBarcode());
+        }
+        if (item.getBarcode() != null) {
+            itemsByBarcode.put(item.getBarcode(), item);
+        }
+        searchIndex.put(item.getId(), item.getName(), item.getDescription());
+        categoryIndex.put(item);
+        stats.put(item);
+        expiryIndex.put(item);
+        lowStockIndex.put(item);
+        version.incrementAndGet();
+        
+        publish(previous == null ? InventoryEvent.Type.ITEM_ADDED : InventoryEvent.Type.ITEM_UPDATED, item);
+        checkStockState(item);
+        checkExpiryState(item, LocalDate.now(), AlertManager.getExpiryWarningDays());
+    }
+    
+    private Item removeItem(String id) {
+        Item removed = items.remove(id);
+        itemsById.remove(id);
+        if (removed != null && removed.getBarcode() != null) {
+            itemsByBarcode.remove(removed.getBarcode());
+        }
+        searchIndex.remove(id);
+        categoryIndex.remove(id);
+        stats.remove(id);
+        expiryIndex.remove(id);
+        lowStockIndex.remove(id);
+        stockStates.remove(id);
+        expiryStates.remove(id);
+        version.incrementAndGet();
+        if (removed != null) {
+            publish(InventoryEvent.Type.ITEM_REMOVED, removed);
         }
         return removed;
     }
     
+    // Stock changes below don't take the inventory lock: each one is a CAS on
+    // the item's own counters, so stations working different SKUs never
+    // contend and a hot SKU only retries. Indexes that depend on quantity are
+    // brought up to date lazily (see applyStockChanges) and the journal
+    // records the item's latest state at flush time.
+    public int adjustQuantity(String id, int delta) {
+        return adjustQuantity(id, delta, "SYSTEM");
+    }
+    
+    public int adjustQuantity(String id, int delta, String username) {
+        Item item = requireItem(id);
+        while (true) {
+            int current = item.getQuantity();
+            int updated = Math.addExact(current, delta);
+            if (delta < 0 && updated < item.getReserved()) {
+                throw new IllegalStateException("only " + item.getAvailableQuantity() + " unreserved units of " + id);
+            }
+            if (!item.compareAndSetQuantity(current, updated)) {
+                continue;
+            }
+            // A reservation may have slipped in between the check and the CAS.
+            if (delta < 0 && updated < item.getReserved()) {
+                addToQuantity(item, -delta);
+                throw new IllegalStateException("stock of " + id + " is reserved");
+            }
+            stockChanged(item, username, "ADJUST_STOCK",
+                String.format("%s %+d (now %d)", id, delta, updated));
+            return updated;
+        }
+    }
+    
+    // Sets the quantity outright, e.g. after a stock count; never below what
+    // is reserved. Returns the previous quantity.
+    public int setQuantity(String id, int quantity, String username) {
+        if (quantity < 0) {
+            throw new IllegalArgumentException("Quantity cannot be negative");
+        }
+        Item item = requireItem(id);
+        while (true) {
+            int current = item.getQuantity();
+            if (quantity < item.getReserved()) {
+                throw new IllegalStateException(item.getReserved() + " units of " + id + " are reserved");
+            }
+            if (!item.compareAndSetQuantity(current, quantity)) {
+                continue;
+            }
+            // A reservation may have slipped in between the check and the CAS.
+            if (quantity < item.getReserved()) {
+                addToQuantity(item, current - quantity);
+                throw new IllegalStateException("stock of " + id + " is reserved");
+            }
+            stockChanged(item, username, "SET_STOCK",
+                String.format("%s set to %d (was %d)", id, quantity, current));
+            return current;
+        }
+    }
+    
+    public boolean reserve(String id, int quantity, String username) {
+        Item item = requireItem(id);
+        if (quantity <= 0) {
+            throw new IllegalArgumentException("Reservation must be positive");
+        }
+        while (true) {
+            int current = item.getReserved();
+            if (current + quantity > item.getQuantity()) {
+                return false;
+            }
+            if (!item.compareAndSetReserved(current, current + quantity)) {
+                continue;
+            }
+            // Stock may have been picked between the check and the CAS.
+            if (item.getReserved() > item.getQuantity()) {
+                addToReserved(item, -quantity);
+                return false;
+            }
+            stockChanged(item, username, "RESERVE_STOCK", id + " reserved " + quantity);
+            return true;
+        }
+    }
+    
+    public boolean release(String id, int quantity, String username) {
+        Item item = requireItem(id);
+        while (true) {
+            int current = item.getReserved();
+            if (quantity <= 0 || quantity > current) {
+                return false;
+            }
+            if (item.compareAndSetReserved(current, current - quantity)) {
+                stockChanged(item, username, "RELEASE_STOCK", id + " released " + quantity);
+                return true;
+            }
+        }
+    }
+    
+    private Item requireItem(String id) {
+        Item item = id == null ? null : itemsById.get(id);
+        if (item == null) {
+            throw new IllegalArgumentException("No item with ID " + id);
+        }
+        return item;
+    }
+    
+    private static void addToQuantity(Item item, int delta) {
+        int current;
+        do {
+            current = item.getQuantity();
+        } while (!item.compareAndSetQuantity(current, current + delta));
+    }
+    
+    private static void addToReserved(Item item, int delta) {
+        int current;
+        do {
+            current = item.getReserved();
+        } while (!item.compareAndSetReserved(current, current + delta));
+    }
+    
+    private void stockChanged(Item item, String username, String action, String details) {
+        version.incrementAndGet();
+        publish(InventoryEvent.Type.STOCK_CHANGED, item);
+        checkStockState(item);
+        dispatchEvents();
+        staleStock.add(item.getId());
+        pendingStock.add(item.getId());
+        PersistenceScheduler.markDirty(JOURNAL_FILE, this::flushPending);
+        ExportUtils.logTransaction(username, action, item.getId(), details);
+    }
+    
+    // Listeners hear about every applied change, after the inventory lock is
+    // released, so they are free to query the inventory. Delivery is
+    // serialized, so events arrive in the order they were published.
+    public interface InventoryListener {
+        void onInventoryEvent(InventoryEvent event);
+    }
+    
+    public void addListener(InventoryListener listener) {
+        listeners.add(listener);
+    }
+    
+    public void removeListener(InventoryListener listener) {
+        listeners.remove(listener);
+    }
+    
+    private void publish(InventoryEvent.Type type, Item item) {
+        if (!listeners.isEmpty()) {
+            pendingEvents.add(new InventoryEvent(type, item));
+        }
+    }
+    
+    private void dispatchEvents() {
+        if (pendingEvents.isEmpty()) {
+            return;
+        }
+        synchronized (pendingEvents) {
+            InventoryEvent event;
+            while ((event = pendingEvents.poll()) != null) {
+                for (InventoryListener listener : listeners) {
+                    listener.onInventoryEvent(event);
+                }
+            }
+        }
+    }
+    
+    // Transitions are decided against the last state recorded per item, so
+    // the lock-free stock path and the later re-index of the same change
+    // never report a crossing twice.
+    private void checkStockState(Item item) {
+        InventoryEvent.Type state = null;
+        if (item.getQuantity() <= 0) {
+            state = InventoryEvent.Type.OUT_OF_STOCK;
+        } else if (item.getQuantity() <= item.getLowStockThreshold()) {
+            state = InventoryEvent.Type.LOW_STOCK;
+        }
+        InventoryEvent.Type previous = state == null
+            ? stockStates.remove(item.getId()) : stockStates.put(item.getId(), state);
+        if (state != previous) {
+            publish(state == null ? InventoryEvent.Type.RESTOCKED : state, item);
+        }
+    }
+    
+    private void checkExpiryState(Item item, LocalDate today, int window) {
+        InventoryEvent.Type state = null;
+        if (item.getExpiryDate() != null) {
+            long days = item.getExpiryDate().toEpochDay() - today.toEpochDay();
+            if (days <= 0) {
+                state = InventoryEvent.Type.EXPIRED;
+            } else if (days <= window) {
+                state = InventoryEvent.Type.EXPIRING;
+            }
+        }
+        InventoryEvent.Type previous = state == null
+            ? expiryStates.remove(item.getId()) : expiryStates.put(item.getId(), state);
+        if (state != null && state != previous) {
+            publish(state, item);
+        }
+    }
+    
+    // Expiry states also move with the calendar. Only the items whose expiry
+    // day has entered the warning window or passed since the last check are
+    // looked at, found through the expiry index.
+    public void checkExpiry() {
+        LocalDate today = LocalDate.now();
+        int window = AlertManager.getExpiryWarningDays();
+        synchronized (expiryCheckLock) {
+            long from = expiryCheckedOn.toEpochDay();
+            long to = today.toEpochDay();
+            if (from == to && window == expiryCheckedWindow) {
+                return;
+            }
+            lock.readLock().lock();
+            try {
+                List<Item> candidates = expiryIndex.getBetween(from, to);
+                candidates.addAll(window == expiryCheckedWindow
+                    ? expiryIndex.getBetween(from + window, to + window)
+                    : expiryIndex.getBetween(to, to + window));
+                for (Item item : candidates) {
+                    checkExpiryState(item, today, window);
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+            expiryCheckedOn = today;
+            expiryCheckedWindow = window;
+        }
+        dispatchEvents();
+    }
+    
+    // Items needing a restock, most urgent first, without scanning the rest.
+    public List<Item> getItemsNeedingRestock(int limit) {
+        applyStockChanges();
+        lock.readLock().lock();
+        try {
+            return lowStockIndex.getItems(limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    public int getRestockCount() {
+        applyStockChanges();
+        lock.readLock().lock();
+        try {
+            return lowStockIndex.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    // Re-indexes items whose stock changed outside the write lock. Called by
+    // the reads that depend on quantity before they take the read lock.
+    private void applyStockChanges() {
+        if (staleStock.isEmpty()) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            for (Iterator<String> it = staleStock.iterator(); it.hasNext(); ) {
+                Item item = items.get(it.next());
+                it.remove();
+                if (item != null) {
+                    categoryIndex.put(item);
+                    stats.put(item);
+                    lowStockIndex.put(item);
+                    checkStockState(item);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+            dispatchEvents();
+        }
+    }
+    
     public Set<String> getCategories() {
-        return items.stream()
-                   .map(Item::getCategory)
-                   .collect(Collectors.toSet());
+        lock.readLock().lock();
+        try {
+            return categoryIndex.getNames();
+        } finally {
+            lock.readLock().unlock();
+        }
     }
     
     public Map<String, Integer> getCategorySummary() {
-        return items.stream()
-                   .collect(Collectors.groupingBy(
-                       Item::getCategory,
-                       Collectors.summingInt(item -> 1)
-                   ));
+        lock.readLock().lock();
+        try {
+            return categoryIndex.getCounts();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    public Map<String, Double> getCategoryValues() {
+        applyStockChanges();
+        lock.readLock().lock();
+        try {
+            return categoryIndex.getValues();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    public List<Map.Entry<String, Double>> getTopValueCategories(int limit) {
+        applyStockChanges();
+        lock.readLock().lock();
+        try {
+            return categoryIndex.getTopByValue(limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    public List<Item> getExpiredItems() {
+        lock.readLock().lock();
+        try {
+            return expiryIndex.getExpired(LocalDate.now());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    // Items expiring after today and within the given number of days, soonest first.
+    public List<Item> getExpiringItems(int days) {
+        lock.readLock().lock();
+        try {
+            return expiryIndex.getExpiring(LocalDate.now(), days);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    public List<Item> getNextToExpire(int limit) {
+        lock.readLock().lock();
+        try {
+            return expiryIndex.getNextToExpire(LocalDate.now(), limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    public int getExpiredCount() {
+        lock.readLock().lock();
+        try {
+            return expiryIndex.countExpired(LocalDate.now());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    public int getExpiringCount(int days) {
+        lock.readLock().lock();
+        try {
+            return expiryIndex.countExpiring(LocalDate.now(), days);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    // Totals maintained as items change, so reading them is O(1).
+    InventoryStats getStats() {
+        applyStockChanges();
+        lock.readLock().lock();
+        try {
+            return stats.copy();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    // Read-only, lazily decoded view of the items as of the last compaction.
+    // Opening it is O(1) and does not load the catalog onto the heap, which
+    // suits offline reporting over very large snapshots.
+    public static MappedRecordStore<Item> openSnapshot() throws IOException {
+        return MappedRecordStore.open(ITEMS_FILE, Item.CODEC);
+    }
+    
+    // Same view, after folding any journaled changes into the snapshot.
+    public MappedRecordStore<Item> openCurrentSnapshot() throws IOException {
+        try {
+            PersistenceScheduler.runExclusive(() -> {
+                if (journal != null) {
+                    compact();
+                } else {
+                    saveItems();
+                }
+            });
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("Could not write inventory snapshot", e);
+        }
+        return openSnapshot();
+    }
+    
+    // Bumped by every change, so callers can tell whether anything they
+    // derived from the inventory is still current.
+    public long getVersion() {
+        return version.get();
     }
     
     public int getTotalItems() {
-        return items.size();
+        lock.readLock().lock();
+        try {
+            return items.size();
+        } finally {
+            lock.readLock().unlock();
+        }
     }
     
     private void loadItems() {
         try {
-            Object data = FileManager.loadData(ITEMS_FILE);
-            if (data instanceof List<?>) {
-                this.items = (List<Item>) data;
+            FileManager.migrateIfLegacy(ITEMS_FILE, Item.CODEC);
+            for (Item item : FileManager.loadList(Item.CODEC, ITEMS_FILE)) {
+                putItem(item);
             }
-        } catch (IOException | ClassNotFoundException e) {
-            System.out.println("No existing inventory data found. Starting fresh.");
-            this.items = new ArrayList<>();
+        } catch (FileNotFoundException e) {
+            // Nothing compacted yet; the journal may still hold items.
+        } catch (IOException e) {
+            String kept = FileManager.quarantine(ITEMS_FILE);
+            System.err.println("Inventory data is unreadable (" + e.getMessage() + ")"
+                + (kept != null ? ", kept as " + kept : "") + ". Starting fresh.");
+        }
+    }
+    
+    // Snapshot + journal: the snapshot holds the state as of the last compaction,
+    // the journal every mutation since. Replaying puts/deletes is idempotent, so a
+    // crash between writing a snapshot and resetting the journal is harmless.
+    private void openJournal() {
+        try {
+            journal = new ItemJournal(JOURNAL_FILE);
+            int replayed = journal.replay(new ItemJournal.Visitor() {
+                @Override
+                public void onPut(String key, byte[] payload) throws IOException {
+                    putItem(decodeJournaledItem(key, payload));
+                }
+                
+                @Override
+                public void onDelete(String key) {
+                    removeItem(key);
+                }
+            });
+            if (replayed > 0) {
+                compact();
+            }
+        } catch (IOException e) {
+            System.err.println("Inventory journal unavailable, saving full snapshots: " + e.getMessage());
+            journal = null;
+        }
+    }
+    
+    // Journals written before the binary format hold Java-serialized items.
+    private static Item decodeJournaledItem(String key, byte[] payload) throws IOException {
+        if (!FileManager.isSerializedObject(payload)) {
+            return FileManager.decode(Item.CODEC, payload);
+        }
+        try {
+            return (Item) FileManager.fromBytes(payload);
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Unreadable journal record for " + key, e);
+        }
+    }
+    
+    // Mutations are encoded on the caller's thread and queued; the
+    // persistence thread appends each batch to the journal with one fsync.
+    private void persistPut(Item item) {
+        ItemJournal.Entry entry = encodePut(item);
+        if (entry != null) {
+            enqueue(entry);
+        }
+    }
+    
+    private static ItemJournal.Entry encodePut(Item item) {
+        try {
+            return ItemJournal.Entry.put(item.getId(), FileManager.encode(Item.CODEC, item));
+        } catch (IOException e) {
+            System.err.println("Error encoding inventory change: " + e.getMessage());
+            return null;
+        }
+    }
+    
+    private void persistDelete(String id) {
+        enqueue(ItemJournal.Entry.delete(id));
+    }
+    
+    // Called under the write lock, so entries are queued in the order the
+    // changes were applied.
+    private void enqueue(ItemJournal.Entry entry) {
+        synchronized (pendingEntries) {
+            pendingEntries.add(entry);
+        }
+        PersistenceScheduler.markDirty(JOURNAL_FILE, this::flushPending);
+    }
+    
+    public int getPendingWrites() {
+        synchronized (pendingEntries) {
+            return pendingEntries.size() + pendingStock.size() + (snapshotPending ? 1 : 0);
+        }
+    }
+    
+    // Blocks until every change made so far is on disk.
+    public void flush() {
+        PersistenceScheduler.flush();
+    }
+    
+    private void flushPending() {
+        List<ItemJournal.Entry> batch;
+        boolean snapshot;
+        synchronized (pendingEntries) {
+            batch = new ArrayList<>(pendingEntries);
+            pendingEntries.clear();
+            snapshot = snapshotPending;
+            snapshotPending = false;
+        }
+        for (Iterator<String> it = pendingStock.iterator(); it.hasNext(); ) {
+            Item item = itemsById.get(it.next());
+            it.remove();
+            if (item != null) {
+                ItemJournal.Entry entry = encodePut(item);
+                if (entry != null) {
+                    batch.add(entry);
+                }
+            }
+        }
+        // A snapshot taken now already includes everything drained above.
+        if (snapshot) {
+            saveSnapshot();
+            return;
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        if (journal == null) {
+            saveItems();
+            return;
+        }
+        
+        try {
+            journal.appendAll(batch);
+            if (journal.getRecordCount() >= compactionThreshold()) {
+                compact();
+            }
+        } catch (IOException e) {
+            System.err.println("Error journaling inventory changes: " + e.getMessage());
+            // A snapshot on its own would be rolled back on the next start by
+            // the older records still in the journal, so reset it as well.
+            try {
+                compact();
+            } catch (IOException saveError) {
+                System.err.println("Error saving inventory data: " + saveError.getMessage());
+                synchronized (pendingEntries) {
+                    snapshotPending = true;
+                }
+                PersistenceScheduler.markDirty(JOURNAL_FILE, this::flushPending);
+            }
+        }
+    }
+    
+    // The journal may grow to a quarter of the catalog before it is folded
+    // into a new snapshot, so on large catalogs a snapshot rewrite stays
+    // amortized over the changes that caused it.
+    private int compactionThreshold() {
+        return Math.max(MIN_COMPACTION_THRESHOLD, itemsById.size() / 4);
+    }
+    
+    private void saveSnapshot() {
+        if (journal == null) {
+            saveItems();
+            return;
+        }
+        try {
+            compact();
+        } catch (IOException e) {
+            System.err.println("Error saving inventory data: " + e.getMessage());
+        }
+    }
+    
+    private void compact() throws IOException {
+        FileManager.saveList(snapshot(), Item.CODEC, ITEMS_FILE);
+        journal.reset();
+    }
+    
+    private List<Item> snapshot() {
+        lock.readLock().lock();
+        try {
+            return new ArrayList<>(items.values());
+        } finally {
+            lock.readLock().unlock();
         }
     }
     
     private void saveItems() {
         try {
-            FileManager.saveData(items, ITEMS_FILE);
+            FileManager.saveList(snapshot(), Item.CODEC, ITEMS_FILE);
         } catch (IOException e) {
             System.err.println("Error saving inventory data: " + e.getMessage());
         }
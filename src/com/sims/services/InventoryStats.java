@@ -0,0 +1,156 @@
+package com.sims.services;
+
+import com.sims.models.Item;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Running totals behind the analytics figures. As with CategoryIndex, each
+// item's last contribution is remembered so an update can take back exactly
+// what was added before, even though the item was edited in place.
+class InventoryStats {
+    static final int OUT_OF_STOCK = 0;
+    static final int LOW_STOCK = 1;
+    static final int NORMAL_STOCK = 2;
+    static final int OVER_STOCK = 3;
+
+    private static final class Contribution {
+        final double price;
+        final double value;
+        final int level;
+        final boolean low;
+        final boolean lowInStock;
+
+        Contribution(Item item) {
+            int quantity = item.getQuantity();
+            this.price = item.getPrice();
+            this.value = price * quantity;
+            this.level = stockLevel(quantity, item.getLowStockThreshold());
+            this.low = quantity <= item.getLowStockThreshold();
+            this.lowInStock = low && quantity > 0;
+        }
+    }
+
+    final private Map<String, Contribution> contributions;
+    private int count;
+    private double totalValue;
+    private double totalPrice;
+    private int lowStock;
+    private int lowInStock;
+    final private int[] levels = new int[4];
+
+    InventoryStats() {
+        this.contributions = new HashMap<>();
+    }
+
+    private InventoryStats(InventoryStats source) {
+        this.contributions = null;
+        this.count = source.count;
+        this.totalValue = source.totalValue;
+        this.totalPrice = source.totalPrice;
+        this.lowStock = source.lowStock;
+        this.lowInStock = source.lowInStock;
+        System.arraycopy(source.levels, 0, levels, 0, levels.length);
+    }
+
+    static int stockLevel(int quantity, int threshold) {
+        if (quantity == 0) {
+            return OUT_OF_STOCK;
+        } else if (quantity <= threshold) {
+            return LOW_STOCK;
+        } else if (quantity > threshold * 3) {
+            return OVER_STOCK;
+        }
+        return NORMAL_STOCK;
+    }
+
+    void put(Item item) {
+        remove(item.getId());
+        Contribution contribution = new Contribution(item);
+        contributions.put(item.getId(), contribution);
+        apply(contribution, 1);
+    }
+
+    void remove(String id) {
+        Contribution previous = contributions.remove(id);
+        if (previous != null) {
+            apply(previous, -1);
+        }
+    }
+
+    // Adds an item to the totals without tracking it, for one-off passes.
+    void accumulate(Item item) {
+        apply(new Contribution(item), 1);
+    }
+
+    // Folds in totals gathered separately, e.g. by another thread over a
+    // different part of the catalog. Per-item tracking is not merged.
+    void merge(InventoryStats other) {
+        count += other.count;
+        totalValue += other.totalValue;
+        totalPrice += other.totalPrice;
+        lowStock += other.lowStock;
+        lowInStock += other.lowInStock;
+        for (int i = 0; i < levels.length; i++) {
+            levels[i] += other.levels[i];
+        }
+    }
+
+    // Read-only copy of the totals, safe to use after the lock is released.
+    InventoryStats copy() {
+        return new InventoryStats(this);
+    }
+
+    private void apply(Contribution contribution, int sign) {
+        count += sign;
+        totalValue += sign * contribution.value;
+        totalPrice += sign * contribution.price;
+        levels[contribution.level] += sign;
+        if (contribution.low) {
+            lowStock += sign;
+        }
+        if (contribution.lowInStock) {
+            lowInStock += sign;
+        }
+        if (count == 0) {
+            // Nothing left to carry rounding error forward.
+            totalValue = 0;
+            totalPrice = 0;
+        }
+    }
+
+    int getCount() {
+        return count;
+    }
+
+    double getTotalValue() {
+        return totalValue;
+    }
+
+    double getAveragePrice() {
+        return count == 0 ? 0.0 : totalPrice / count;
+    }
+
+    double getLowStockPercentage() {
+        return count == 0 ? 0.0 : (double) lowStock / count * 100;
+    }
+
+    // Low but not yet out, the dashboard's figure. Unlike the LOW_STOCK
+    // level this leaves out negative quantities.
+    int getLowInStockCount() {
+        return lowInStock;
+    }
+
+    int getLevelCount(int level) {
+        return levels[level];
+    }
+
+    Map<String, Integer> getStockDistribution() {
+        Map<String, Integer> distribution = new LinkedHashMap<>();
+        distribution.put("outOfStock", levels[OUT_OF_STOCK]);
+        distribution.put("lowStock", levels[LOW_STOCK]);
+        distribution.put("normalStock", levels[NORMAL_STOCK]);
+        distribution.put("overStock", levels[OVER_STOCK]);
+        return distribution;
+    }
+}
@@ -0,0 +1,79 @@
+package com.sims.services;
+
+import com.sims.models.Item;
+import java.util.*;
+
+// Items that need restocking (at or below their threshold, or out of stock),
+// most urgent first: lowest quantity relative to threshold, then largest
+// shortfall. Only flagged items are held, so reorder queries are O(k).
+class LowStockIndex {
+    private static final class Entry {
+        final Item item;
+        final int quantity;
+        final int threshold;
+
+        Entry(Item item, int quantity, int threshold) {
+            this.item = item;
+            this.quantity = quantity;
+            this.threshold = threshold;
+        }
+
+        double fill() {
+            return threshold > 0 ? (double) quantity / threshold : 0.0;
+        }
+    }
+
+    private static final Comparator<Entry> URGENCY = Comparator
+        .comparingDouble(Entry::fill)
+        .thenComparing(Comparator.comparingInt((Entry e) -> e.threshold - e.quantity).reversed())
+        .thenComparing(e -> e.item.getId());
+
+    final private TreeSet<Entry> flagged = new TreeSet<>(URGENCY);
+    final private Map<String, Entry> entries = new HashMap<>();
+
+    static boolean needsRestock(int quantity, int threshold) {
+        return quantity <= 0 || quantity <= threshold;
+    }
+
+    // Returns whether the item was flagged before this call, so callers can
+    // tell when it crossed its threshold.
+    boolean put(Item item) {
+        boolean wasFlagged = remove(item.getId());
+        int quantity = item.getQuantity();
+        int threshold = item.getLowStockThreshold();
+        if (needsRestock(quantity, threshold)) {
+            Entry entry = new Entry(item, quantity, threshold);
+            flagged.add(entry);
+            entries.put(item.getId(), entry);
+        }
+        return wasFlagged;
+    }
+
+    boolean remove(String id) {
+        Entry entry = entries.remove(id);
+        if (entry == null) {
+            return false;
+        }
+        flagged.remove(entry);
+        return true;
+    }
+
+    boolean contains(String id) {
+        return entries.containsKey(id);
+    }
+
+    int size() {
+        return flagged.size();
+    }
+
+    List<Item> getItems(int limit) {
+        List<Item> items = new ArrayList<>(Math.min(limit, flagged.size()));
+        for (Entry entry : flagged) {
+            if (items.size() == limit) {
+                break;
+            }
+            items.add(entry.item);
+        }
+        return items;
+    }
+}
@@ -0,0 +1,35 @@
+package com.sims.services;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
+// One notification as stored in NotificationService's ring. Only the raw
+// fields are kept; the display line is built when it is read.
+final class NotificationRecord {
+    private static final DateTimeFormatter TIMESTAMP_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+
+    final long sequence;
+    final String type;
+    final String itemId;
+    final String message;
+    final long timestamp;
+
+    NotificationRecord(long sequence, String type, String itemId, String message, long timestamp) {
+        this.sequence = sequence;
+        this.type = type;
+        this.itemId = itemId;
+        this.message = message;
+        this.timestamp = timestamp;
+    }
+
+    LocalDate getDate() {
+        return Instant.ofEpochMilli(timestamp).atZone(ZoneId.systemDefault()).toLocalDate();
+    }
+
+    String format() {
+        String time = Instant.ofEpochMilli(timestamp).atZone(ZoneId.systemDefault()).format(TIMESTAMP_FORMAT);
+        return "[" + time + "] " + type + ": " + message;
+    }
+}
@@ -1,50 +1,214 @@
 package com.sims.services;
 
 import com.sims.models.Item;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.time.LocalDate;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
 
 public class NotificationService {
-    final private static List<String> notifications = new ArrayList<>();
+    // An item raising the same alert again within the cooldown (e.g. stock
+    // bouncing around its threshold) is not reported twice.
+    private static final long ALERT_COOLDOWN_MILLIS =
+        Long.getLong("sims.notifications.cooldownMs", 10 * 60 * 1000L);
+    // Caps alerts per minute so a bulk import cannot flood the list; the
+    // overflow is summarized once the next minute starts.
+    private static final int MAX_ALERTS_PER_MINUTE = Integer.getInteger("sims.notifications.maxPerMinute", 30);
+    private static final int MAX_TRACKED_ALERTS = 10_000;
+    private static final int CAPACITY = Math.max(1, Integer.getInteger("sims.notifications.capacity", 50));
+    
+    // Fixed-size ring of the latest notifications. A producer claims the next
+    // sequence number and writes its slot, overwriting the oldest entry, so
+    // adding never locks or shifts. Each record carries its sequence, which
+    // lets readers skip slots that were overwritten or not yet written.
+    final private static AtomicLong nextSequence = new AtomicLong();
+    final private static AtomicReferenceArray<NotificationRecord> ring = new AtomicReferenceArray<>(CAPACITY);
+    final private static Map<String, LongAdder> countsByType = new ConcurrentHashMap<>();
+    // Notifications from today before this sequence were superseded by a
+    // regenerate of the daily list.
+    private static volatile long clearedBefore;
+    
+    final private static Map<String, Long> lastAlerted = new HashMap<>();
+    private static long windowStart;
+    private static int alertsInWindow;
+    private static int suppressedInWindow;
+    private static long suppressedTotal;
     
     public static void addNotification(String type, String message) {
-        String timestamp = LocalDateTime.now()
-                                      .format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm"));
-        String notification = String.format("[%s] %s: %s", timestamp, type, message);
-        notifications.add(notification);
-        
-        if (notifications.size() > 50) {
-            notifications.remove(0);
+        addNotification(type, null, message);
+    }
+    
+    public static void addNotification(String type, String itemId, String message) {
+        long sequence = nextSequence.getAndIncrement();
+        NotificationRecord record = new NotificationRecord(sequence, type, itemId, message, System.currentTimeMillis());
+        int slot = (int) (sequence % CAPACITY);
+        // A producer preempted after claiming its sequence may find a newer
+        // record already in the slot; that one wins, since ours has already
+        // fallen out of the window readers look at.
+        while (true) {
+            NotificationRecord current = ring.get(slot);
+            if (current != null && current.sequence > sequence || ring.compareAndSet(slot, current, record)) {
+                break;
+            }
         }
+        countsByType.computeIfAbsent(type, t -> new LongAdder()).increment();
     }
     
+    // Oldest first, as they were added.
     public static List<String> getRecentNotifications(int count) {
-        int size = notifications.size();
-        int start = Math.max(0, size - count);
-        return new ArrayList<>(notifications.subList(start, size));
+        List<String> result = new ArrayList<>();
+        for (NotificationRecord record : recentRecords(count)) {
+            result.add(record.format());
+        }
+        return result;
+    }
+    
+    private static List<NotificationRecord> recentRecords(int count) {
+        long end = nextSequence.get();
+        long start = Math.max(0, end - Math.min(count, CAPACITY));
+        long cleared = clearedBefore;
+        LocalDate today = cleared > start ? LocalDate.now() : null;
+        List<NotificationRecord> records = new ArrayList<>((int) (end - start));
+        for (long sequence = start; sequence < end; sequence++) {
+            NotificationRecord record = ring.get((int) (sequence % CAPACITY));
+            if (record == null || record.sequence != sequence) {
+                continue;
+            }
+            if (sequence < cleared && record.getDate().equals(today)) {
+                continue;
+            }
+            records.add(record);
+        }
+        return records;
     }
     
-    public static void generateDailyNotifications(List<Item> items) {
-        String today = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd"));
-        notifications.removeIf(notif -> notif.contains(today));
+    // Notifications ever added with the given type (INFO, WARNING, CRITICAL),
+    // including those that have since dropped out of the ring.
+    public static long getNotificationCount(String type) {
+        LongAdder count = countsByType.get(type);
+        return count == null ? 0 : count.sum();
+    }
+    
+    public static synchronized void generateDailyNotifications(List<Item> items) {
+        clearTodaysNotifications();
         
+        int expiryDays = AlertManager.getExpiryWarningDays();
         for (Item item : items) {
-            if (item.getQuantity() == 0) {
-                addNotification("CRITICAL", item.getName() + " is out of stock");
-            } else if (item.getQuantity() <= item.getLowStockThreshold()) {
-                addNotification("WARNING", item.getName() + " is running low (Qty: " + item.getQuantity() + ")");
-            }
+            addStockNotification(item);
             
             if (item.isExpired()) {
-                addNotification("CRITICAL", item.getName() + " has expired");
-            } else if (item.isExpiring()) {
-                addNotification("WARNING", item.getName() + " expires soon");
+                addNotification("CRITICAL", item.getId(), item.getName() + " has expired");
+            } else if (item.isExpiring(expiryDays)) {
+                addNotification("WARNING", item.getId(), item.getName() + " expires soon");
+            }
+        }
+    }
+    
+    // Alerts come from the inventory's events as items cross into low stock,
+    // out of stock, expiring or expired, so nothing is rescanned. Items that
+    // are already in such a state are reported once on subscribing, from the
+    // restock queue and expiry index.
+    public static void subscribe(InventoryManager inventoryManager) {
+        inventoryManager.addListener(NotificationService::onInventoryEvent);
+        
+        for (Item item : inventoryManager.getItemsNeedingRestock(Integer.MAX_VALUE)) {
+            onInventoryEvent(new InventoryEvent(item.getQuantity() <= 0
+                ? InventoryEvent.Type.OUT_OF_STOCK : InventoryEvent.Type.LOW_STOCK, item));
+        }
+        for (Item item : AlertManager.getExpiredItems(inventoryManager)) {
+            onInventoryEvent(new InventoryEvent(InventoryEvent.Type.EXPIRED, item));
+        }
+        for (Item item : AlertManager.getExpiringItems(inventoryManager)) {
+            onInventoryEvent(new InventoryEvent(InventoryEvent.Type.EXPIRING, item));
+        }
+    }
+    
+    // Stock alerts arrive as they happen; expiry also moves with the date, so
+    // this picks up items that expired or came into the warning window since
+    // the last call. Not synchronized: the check delivers events back here.
+    public static void generateDailyNotifications(InventoryManager inventoryManager) {
+        inventoryManager.checkExpiry();
+    }
+    
+    private static synchronized void onInventoryEvent(InventoryEvent event) {
+        Item item = event.getItem();
+        switch (event.getType()) {
+            case LOW_STOCK:
+                alert(event, "WARNING", item.getName() + " is running low (Qty: " + item.getQuantity() + ")");
+                break;
+            case OUT_OF_STOCK:
+                alert(event, "CRITICAL", item.getName() + " is out of stock");
+                break;
+            case EXPIRING:
+                alert(event, "WARNING", item.getName() + " expires soon");
+                break;
+            case EXPIRED:
+                alert(event, "CRITICAL", item.getName() + " has expired");
+                break;
+            case ITEM_REMOVED:
+                for (InventoryEvent.Type type : InventoryEvent.Type.values()) {
+                    lastAlerted.remove(alertKey(item, type));
+                }
+                break;
+            default:
+                break;
+        }
+    }
+    
+    private static String alertKey(Item item, InventoryEvent.Type type) {
+        return item.getId() + ":" + type;
+    }
+    
+    private static void alert(InventoryEvent event, String type, String message) {
+        long now = System.currentTimeMillis();
+        String key = alertKey(event.getItem(), event.getType());
+        Long last = lastAlerted.get(key);
+        if (last != null && now - last < ALERT_COOLDOWN_MILLIS) {
+            return;
+        }
+        
+        if (now - windowStart >= 60_000) {
+            if (suppressedInWindow > 0) {
+                addNotification("INFO", suppressedInWindow + " more alerts were not shown (rate limit)");
             }
+            windowStart = now;
+            alertsInWindow = 0;
+            suppressedInWindow = 0;
+        }
+        if (alertsInWindow >= MAX_ALERTS_PER_MINUTE) {
+            suppressedInWindow++;
+            suppressedTotal++;
+            return;
+        }
+        alertsInWindow++;
+        
+        if (lastAlerted.size() >= MAX_TRACKED_ALERTS) {
+            lastAlerted.values().removeIf(time -> now - time >= ALERT_COOLDOWN_MILLIS);
+        }
+        lastAlerted.put(key, now);
+        addNotification(type, event.getItem().getId(), message);
+    }
+    
+    public static synchronized long getSuppressedCount() {
+        return suppressedTotal;
+    }
+    
+    private static void clearTodaysNotifications() {
+        clearedBefore = nextSequence.get();
+    }
+    
+    private static void addStockNotification(Item item) {
+        if (item.getQuantity() == 0) {
+            addNotification("CRITICAL", item.getId(), item.getName() + " is out of stock");
+        } else if (item.getQuantity() <= item.getLowStockThreshold()) {
+            addNotification("WARNING", item.getId(), item.getName() + " is running low (Qty: " + item.getQuantity() + ")");
         }
     }
     
     public static void showAllNotifications() {
+        List<String> notifications = getRecentNotifications(CAPACITY);
         if (notifications.isEmpty()) {
             System.out.println("No notifications to display.");
             return;
@@ -0,0 +1,125 @@
+package com.sims.services;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Moves data-file writes off the caller's thread. Managers mark themselves
+// dirty with a flush action; repeated marks for the same key before the
+// debounce interval elapses collapse into one write. Everything still
+// pending is written by flush(), which also runs from a shutdown hook so an
+// orderly exit never loses data.
+public class PersistenceScheduler {
+    private static final long DEBOUNCE_MILLIS = Long.getLong("sims.persistence.debounceMs", 200L);
+    
+    public interface FlushAction {
+        void flush() throws Exception;
+    }
+    
+    final private static Map<String, FlushAction> dirty = new LinkedHashMap<>();
+    final private static ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "sims-persistence");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static boolean drainScheduled;
+    
+    final private static AtomicLong flushCount = new AtomicLong();
+    final private static AtomicLong totalFlushNanos = new AtomicLong();
+    final private static AtomicLong lastFlushNanos = new AtomicLong();
+    final private static AtomicLong maxFlushNanos = new AtomicLong();
+    
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(PersistenceScheduler::flush, "sims-persistence-shutdown"));
+    }
+    
+    public static void markDirty(String key, FlushAction action) {
+        synchronized (dirty) {
+            dirty.put(key, action);
+            if (!drainScheduled) {
+                drainScheduled = true;
+                executor.schedule(PersistenceScheduler::drain, DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+    
+    // Blocks until everything marked dirty so far has been written.
+    public static void flush() {
+        if (Thread.currentThread().getName().equals("sims-persistence")) {
+            drain();
+            return;
+        }
+        try {
+            executor.submit(PersistenceScheduler::drain).get();
+        } catch (RejectedExecutionException e) {
+            drain();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            System.err.println("Error flushing data: " + e.getCause().getMessage());
+        }
+    }
+    
+    // Runs an action on the persistence thread after pending writes, so it
+    // never interleaves with a background flush.
+    public static void runExclusive(FlushAction action) throws Exception {
+        try {
+            executor.submit(() -> {
+                drain();
+                action.flush();
+                return null;
+            }).get();
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        }
+    }
+    
+    private static void drain() {
+        List<Map.Entry<String, FlushAction>> pending;
+        synchronized (dirty) {
+            pending = new ArrayList<>(dirty.entrySet());
+            dirty.clear();
+            drainScheduled = false;
+        }
+        
+        for (Map.Entry<String, FlushAction> entry : pending) {
+            long start = System.nanoTime();
+            try {
+                entry.getValue().flush();
+            } catch (Exception e) {
+                System.err.println("Error saving " + entry.getKey() + ": " + e.getMessage());
+            }
+            recordFlush(System.nanoTime() - start);
+        }
+    }
+    
+    private static void recordFlush(long nanos) {
+        flushCount.incrementAndGet();
+        totalFlushNanos.addAndGet(nanos);
+        lastFlushNanos.set(nanos);
+        maxFlushNanos.accumulateAndGet(nanos, Math::max);
+    }
+    
+    public static int getQueueDepth() {
+        synchronized (dirty) {
+            return dirty.size();
+        }
+    }
+    
+    public static long getFlushCount() {
+        return flushCount.get();
+    }
+    
+    public static double getLastFlushMillis() {
+        return lastFlushNanos.get() / 1_000_000.0;
+    }
+    
+    public static double getMaxFlushMillis() {
+        return maxFlushNanos.get() / 1_000_000.0;
+    }
+    
+    public static double getAverageFlushMillis() {
+        long count = flushCount.get();
+        return count == 0 ? 0.0 : totalFlushNanos.get() / 1_000_000.0 / count;
+    }
+}
@@ -0,0 +1,629 @@
+package com.sims.services;
+
+import com.sims.models.Transaction;
+import com.sims.utils.ReverseLineReader;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+// The transaction log, split into segments. New lines go to the active
+// segment, data/transactions.log, in the same text layout as always. Once it
+// reaches the size or age limit it is closed: moved to data/txlog/ under the
+// next sequence number, optionally gzipped, with a sparse index beside it.
+//
+// The index has one entry per ~64 KB block of lines: the block's first
+// timestamp, its offset in the segment file and a small bloom of the users
+// in it. Compressed segments are written one gzip member per block, so the
+// offsets stay seekable. Queries read only the blocks they need, one at a
+// time, and only per-segment summaries are held in memory.
+class SegmentedTransactionLog {
+    static final DateTimeFormatter TIMESTAMP_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final int INDEX_FORMAT = 1;
+    private static final int BLOCK_BYTES = 64 * 1024;
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+    // Platform charset, which is what the log has always been written in.
+    private static final Charset CHARSET = Charset.defaultCharset();
+    private static final Pattern SEGMENT_NAME = Pattern.compile("(\\d+)\\.(log|log\\.gz|idx)");
+
+    private static final class Block {
+        final long timestamp;
+        final long offset;
+        long users;
+
+        Block(long timestamp, long offset, long users) {
+            this.timestamp = timestamp;
+            this.offset = offset;
+            this.users = users;
+        }
+    }
+
+    private static final class Segment {
+        final long sequence;
+        final File file;
+        final boolean compressed;
+        long firstTimestamp = Long.MAX_VALUE;
+        long lastTimestamp = Long.MIN_VALUE;
+        long users;
+        long length;
+        // Held only for the active segment; closed ones read their index file.
+        List<Block> blocks;
+        // Set on snapshots of the active segment, opened while it cannot rotate.
+        FileChannel channel;
+
+        Segment(long sequence, File file, boolean compressed) {
+            this.sequence = sequence;
+            this.file = file;
+            this.compressed = compressed;
+        }
+
+        // Accounts for a line appended to the end of a plain segment.
+        void append(long timestamp, String user, int bytes) {
+            if (blocks.isEmpty() || length - blocks.get(blocks.size() - 1).offset >= BLOCK_BYTES) {
+                blocks.add(new Block(timestamp, length, 0));
+            }
+            long bits = userBits(user);
+            blocks.get(blocks.size() - 1).users |= bits;
+            users |= bits;
+            firstTimestamp = Math.min(firstTimestamp, timestamp);
+            lastTimestamp = Math.max(lastTimestamp, timestamp);
+            length += bytes;
+        }
+    }
+
+    final private File activeFile;
+    final private File segmentDir;
+    final private long segmentBytes;
+    final private long segmentSeconds;
+    final private boolean compress;
+    final private int maxSegments;
+    final private List<Segment> segments = new ArrayList<>();
+    final private ByteArrayOutputStream pending = new ByteArrayOutputStream(64 * 1024);
+    final private StringBuilder line = new StringBuilder(256);
+    private Segment active;
+    private FileChannel channel;
+    private long nextSequence = 1;
+
+    SegmentedTransactionLog(File activeFile, File segmentDir, long segmentBytes, long segmentSeconds,
+                            boolean compress, int maxSegments) {
+        this.activeFile = activeFile;
+        this.segmentDir = segmentDir;
+        this.segmentBytes = segmentBytes;
+        this.segmentSeconds = segmentSeconds;
+        this.compress = compress;
+        this.maxSegments = maxSegments;
+        try {
+            loadSegments();
+        } catch (IOException e) {
+            System.err.println("Error loading transaction log segments: " + e.getMessage());
+        }
+        active = scanActive();
+    }
+
+    // Closed segments whose index is missing were cut short by a crash
+    // during rotation, so the index is rebuilt and any half-written
+    // compressed copy dropped.
+    private void loadSegments() throws IOException {
+        File[] files = segmentDir.listFiles();
+        if (files == null) {
+            return;
+        }
+        TreeSet<Long> sequences = new TreeSet<>();
+        for (File file : files) {
+            Matcher matcher = SEGMENT_NAME.matcher(file.getName());
+            if (matcher.matches()) {
+                sequences.add(Long.parseLong(matcher.group(1)));
+            }
+        }
+        if (!sequences.isEmpty()) {
+            nextSequence = sequences.last() + 1;
+        }
+        for (long sequence : sequences) {
+            File plain = segmentFile(sequence, ".log");
+            File gzipped = segmentFile(sequence, ".log.gz");
+            File index = segmentFile(sequence, ".idx");
+            Segment segment;
+            if (index.exists()) {
+                segment = readIndex(sequence, index, false);
+                (segment.compressed ? plain : gzipped).delete();
+            } else if (plain.exists()) {
+                gzipped.delete();
+                segment = scan(sequence, plain);
+                writeIndex(segment, index);
+                segment.blocks = null;
+            } else {
+                // Not something rotation leaves behind; keep it for inspection.
+                System.err.println("Skipping transaction log segment without an index: " + gzipped);
+                continue;
+            }
+            segments.add(segment);
+        }
+    }
+
+    private Segment scanActive() {
+        try {
+            return activeFile.exists() ? scan(0, activeFile) : emptyActive();
+        } catch (IOException e) {
+            System.err.println("Error reading transaction log: " + e.getMessage());
+            return emptyActive();
+        }
+    }
+
+    private Segment emptyActive() {
+        Segment segment = new Segment(0, activeFile, false);
+        segment.blocks = new ArrayList<>();
+        return segment;
+    }
+
+    private File segmentFile(long sequence, String suffix) {
+        return new File(segmentDir, String.format("%08d", sequence) + suffix);
+    }
+
+    // Builds the index of a plain segment by reading it through once.
+    private static Segment scan(long sequence, File file) throws IOException {
+        Segment segment = new Segment(sequence, file, false);
+        segment.blocks = new ArrayList<>();
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file), 64 * 1024)) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+            long timestamp = 0;
+            int b;
+            do {
+                b = in.read();
+                if (b >= 0) {
+                    bytes.write(b);
+                }
+                if ((b == '\n' || b < 0) && bytes.size() > 0) {
+                    String text = new String(bytes.toByteArray(), CHARSET);
+                    long parsed = parseTimestamp(text);
+                    timestamp = parsed != Long.MIN_VALUE ? parsed : timestamp;
+                    segment.append(timestamp, parseUser(text), bytes.size());
+                    bytes.reset();
+                }
+            } while (b >= 0);
+        }
+        return segment;
+    }
+
+    synchronized void append(List<Transaction> batch) throws IOException {
+        try {
+            for (Transaction transaction : batch) {
+                long timestamp = transaction.getTimestamp().toEpochSecond(ZoneOffset.UTC);
+                if (active.length > 0 && (active.length >= segmentBytes
+                        || timestamp - active.firstTimestamp >= segmentSeconds)) {
+                    writePending();
+                    rotate();
+                }
+                line.setLength(0);
+                formatLine(line, transaction);
+                line.append(LINE_SEPARATOR);
+                byte[] bytes = line.toString().getBytes(CHARSET);
+                pending.write(bytes, 0, bytes.length);
+                active.append(timestamp, transaction.getUserId(), bytes.length);
+            }
+            writePending();
+        } catch (IOException e) {
+            // Start over from what actually reached the file.
+            pending.reset();
+            closeChannel();
+            active = scanActive();
+            throw e;
+        }
+    }
+
+    synchronized void force() throws IOException {
+        if (channel != null) {
+            channel.force(false);
+        }
+    }
+
+    static String format(Transaction transaction) {
+        StringBuilder text = new StringBuilder(128);
+        formatLine(text, transaction);
+        return text.toString();
+    }
+
+    private static void formatLine(StringBuilder text, Transaction transaction) {
+        text.append('[');
+        TIMESTAMP_FORMAT.formatTo(transaction.getTimestamp(), text);
+        text.append("] ").append(transaction.getUserId())
+            .append(" - ").append(transaction.getAction())
+            .append(": ").append(transaction.getDetails());
+    }
+
+    private void writePending() throws IOException {
+        if (pending.size() == 0) {
+            return;
+        }
+        if (channel == null) {
+            File parentDir = activeFile.getParentFile();
+            if (parentDir != null && !parentDir.exists()) {
+                parentDir.mkdirs();
+            }
+            channel = FileChannel.open(activeFile.toPath(), StandardOpenOption.CREATE,
+                                       StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(pending.toByteArray());
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        pending.reset();
+    }
+
+    private void closeChannel() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Reopened on the next write.
+            }
+            channel = null;
+        }
+    }
+
+    private void rotate() throws IOException {
+        closeChannel();
+        segmentDir.mkdirs();
+        long sequence = nextSequence++;
+        File plain = segmentFile(sequence, ".log");
+        Files.move(activeFile.toPath(), plain.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+        Segment closed = new Segment(sequence, plain, false);
+        closed.firstTimestamp = active.firstTimestamp;
+        closed.lastTimestamp = active.lastTimestamp;
+        closed.users = active.users;
+        closed.length = active.length;
+        closed.blocks = active.blocks;
+        if (compress) {
+            closed = compress(closed, segmentFile(sequence, ".log.gz"));
+        }
+        writeIndex(closed, segmentFile(sequence, ".idx"));
+        if (closed.compressed) {
+            plain.delete();
+        }
+        closed.blocks = null;
+        segments.add(closed);
+        active = emptyActive();
+
+        while (maxSegments > 0 && segments.size() > maxSegments) {
+            Segment oldest = segments.remove(0);
+            oldest.file.delete();
+            segmentFile(oldest.sequence, ".idx").delete();
+        }
+    }
+
+    private static Segment compress(Segment segment, File target) throws IOException {
+        Segment compressed = new Segment(segment.sequence, target, true);
+        compressed.firstTimestamp = segment.firstTimestamp;
+        compressed.lastTimestamp = segment.lastTimestamp;
+        compressed.users = segment.users;
+        compressed.blocks = new ArrayList<>(segment.blocks.size());
+        try (FileChannel in = FileChannel.open(segment.file.toPath(), StandardOpenOption.READ);
+             OutputStream out = new BufferedOutputStream(new FileOutputStream(target), 64 * 1024)) {
+            ByteArrayOutputStream member = new ByteArrayOutputStream(BLOCK_BYTES);
+            for (int i = 0; i < segment.blocks.size(); i++) {
+                Block block = segment.blocks.get(i);
+                byte[] bytes = readRange(in, block.offset, blockEnd(segment, segment.blocks, i));
+                member.reset();
+                try (GZIPOutputStream gzip = new GZIPOutputStream(member)) {
+                    gzip.write(bytes);
+                }
+                compressed.blocks.add(new Block(block.timestamp, compressed.length, block.users));
+                member.writeTo(out);
+                compressed.length += member.size();
+            }
+        }
+        return compressed;
+    }
+
+    private static void writeIndex(Segment segment, File index) throws IOException {
+        File temp = new File(index.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(INDEX_FORMAT);
+            out.writeBoolean(segment.compressed);
+            out.writeLong(segment.firstTimestamp);
+            out.writeLong(segment.lastTimestamp);
+            out.writeLong(segment.users);
+            out.writeLong(segment.length);
+            out.writeInt(segment.blocks.size());
+            for (Block block : segment.blocks) {
+                out.writeLong(block.timestamp);
+                out.writeLong(block.offset);
+                out.writeLong(block.users);
+            }
+        }
+        Files.move(temp.toPath(), index.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                   StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private Segment readIndex(long sequence, File index, boolean withBlocks) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(index)))) {
+            if (in.readInt() != INDEX_FORMAT) {
+                throw new IOException("Unsupported index format in " + index);
+            }
+            boolean compressed = in.readBoolean();
+            Segment segment = new Segment(sequence, segmentFile(sequence, compressed ? ".log.gz" : ".log"), compressed);
+            segment.firstTimestamp = in.readLong();
+            segment.lastTimestamp = in.readLong();
+            segment.users = in.readLong();
+            segment.length = in.readLong();
+            if (withBlocks) {
+                int count = in.readInt();
+                segment.blocks = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    segment.blocks.add(new Block(in.readLong(), in.readLong(), in.readLong()));
+                }
+            }
+            return segment;
+        }
+    }
+
+    // Oldest first. The active segment is copied and its file opened here,
+    // so a rotation after this returns cannot move it under the reader.
+    private synchronized List<Segment> snapshot() {
+        List<Segment> snapshot = new ArrayList<>(segments);
+        if (active.length > 0) {
+            Segment copy = new Segment(active.sequence, active.file, false);
+            copy.firstTimestamp = active.firstTimestamp;
+            copy.lastTimestamp = active.lastTimestamp;
+            copy.users = active.users;
+            copy.length = active.length;
+            copy.blocks = new ArrayList<>(active.blocks.size());
+            for (Block block : active.blocks) {
+                copy.blocks.add(new Block(block.timestamp, block.offset, block.users));
+            }
+            try {
+                copy.channel = FileChannel.open(activeFile.toPath(), StandardOpenOption.READ);
+                snapshot.add(copy);
+            } catch (IOException e) {
+                System.err.println("Error reading transaction log: " + e.getMessage());
+            }
+        }
+        return snapshot;
+    }
+
+    private interface SegmentReader {
+        // Returns false once the query has all it needs.
+        boolean read(Segment segment, List<Block> blocks, FileChannel channel) throws IOException;
+    }
+
+    private void visit(List<Segment> snapshot, boolean newestFirst, SegmentReader reader) {
+        boolean more = true;
+        for (int s = 0; s < snapshot.size() && more; s++) {
+            Segment segment = snapshot.get(newestFirst ? snapshot.size() - 1 - s : s);
+            try (FileChannel channel = segment.channel != null
+                    ? segment.channel : FileChannel.open(segment.file.toPath(), StandardOpenOption.READ)) {
+                List<Block> blocks = segment.blocks != null
+                    ? segment.blocks : readIndex(segment.sequence, segmentFile(segment.sequence, ".idx"), true).blocks;
+                more = reader.read(segment, blocks, channel);
+            } catch (FileNotFoundException | java.nio.file.NoSuchFileException e) {
+                // Pruned since the snapshot was taken.
+            } catch (IOException e) {
+                System.err.println("Error reading transaction log: " + e.getMessage());
+            }
+        }
+        for (Segment segment : snapshot) {
+            if (segment.channel != null) {
+                closeQuietly(segment.channel);
+            }
+        }
+    }
+
+    // The last `count` lines, oldest first. Plain segments are read backwards
+    // from their end, so this touches about `count` lines' worth of bytes.
+    List<String> tail(int count) {
+        List<String> newestFirst = new ArrayList<>();
+        if (count <= 0) {
+            return newestFirst;
+        }
+        visit(snapshot(), true, (segment, blocks, channel) -> {
+            if (!segment.compressed) {
+                ReverseLineReader reader = new ReverseLineReader(channel, segment.length, CHARSET);
+                String text;
+                while ((text = reader.readLine()) != null) {
+                    if (!text.isEmpty()) {
+                        newestFirst.add(text);
+                        if (newestFirst.size() == count) {
+                            return false;
+                        }
+                    }
+                }
+                return true;
+            }
+            for (int i = blocks.size() - 1; i >= 0; i--) {
+                List<String> lines = readBlock(channel, segment, blocks, i);
+                for (int j = lines.size() - 1; j >= 0; j--) {
+                    newestFirst.add(lines.get(j));
+                    if (newestFirst.size() == count) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        });
+        Collections.reverse(newestFirst);
+        return newestFirst;
+    }
+
+    // Lines stamped from `from` to `to` inclusive, oldest first, at most `limit`.
+    List<String> between(LocalDateTime from, LocalDateTime to, int limit) {
+        long fromSeconds = from.toEpochSecond(ZoneOffset.UTC);
+        long toSeconds = to.toEpochSecond(ZoneOffset.UTC);
+        List<String> result = new ArrayList<>();
+        if (limit <= 0) {
+            return result;
+        }
+        List<Segment> candidates = new ArrayList<>();
+        for (Segment segment : snapshot()) {
+            if (segment.lastTimestamp >= fromSeconds && segment.firstTimestamp <= toSeconds) {
+                candidates.add(segment);
+            } else if (segment.channel != null) {
+                closeQuietly(segment.channel);
+            }
+        }
+        visit(candidates, false, (segment, blocks, channel) -> {
+            // A block whose first line is before `from` can still hold lines
+            // after it, so start one block early.
+            int first = 0;
+            while (first + 1 < blocks.size() && blocks.get(first + 1).timestamp < fromSeconds) {
+                first++;
+            }
+            for (int i = first; i < blocks.size() && blocks.get(i).timestamp <= toSeconds; i++) {
+                for (String text : readBlock(channel, segment, blocks, i)) {
+                    long timestamp = parseTimestamp(text);
+                    if (timestamp >= fromSeconds && timestamp <= toSeconds) {
+                        result.add(text);
+                        if (result.size() == limit) {
+                            return false;
+                        }
+                    }
+                }
+            }
+            return true;
+        });
+        return result;
+    }
+
+    // The most recent `limit` lines logged by `user`, oldest first. Segments
+    // and blocks whose user bloom rules the user out are not read.
+    List<String> byUser(String user, int limit) {
+        List<String> newestFirst = new ArrayList<>();
+        if (limit <= 0) {
+            return newestFirst;
+        }
+        long bits = userBits(user);
+        List<Segment> candidates = new ArrayList<>();
+        for (Segment segment : snapshot()) {
+            if ((segment.users & bits) == bits) {
+                candidates.add(segment);
+            } else if (segment.channel != null) {
+                closeQuietly(segment.channel);
+            }
+        }
+        visit(candidates, true, (segment, blocks, channel) -> {
+            for (int i = blocks.size() - 1; i >= 0; i--) {
+                if ((blocks.get(i).users & bits) != bits) {
+                    continue;
+                }
+                List<String> lines = readBlock(channel, segment, blocks, i);
+                for (int j = lines.size() - 1; j >= 0; j--) {
+                    if (user.equals(parseUser(lines.get(j)))) {
+                        newestFirst.add(lines.get(j));
+                        if (newestFirst.size() == limit) {
+                            return false;
+                        }
+                    }
+                }
+            }
+            return true;
+        });
+        Collections.reverse(newestFirst);
+        return newestFirst;
+    }
+
+    // Every line, oldest first, holding one block in memory at a time.
+    void forEach(Consumer<String> action) {
+        visit(snapshot(), false, (segment, blocks, channel) -> {
+            for (int i = 0; i < blocks.size(); i++) {
+                for (String text : readBlock(channel, segment, blocks, i)) {
+                    action.accept(text);
+                }
+            }
+            return true;
+        });
+    }
+
+    // Reads a line back into a transaction, for history logged before the
+    // audit store kept typed records. Null if the line is not in the format.
+    static Transaction parse(String text) {
+        long timestamp = parseTimestamp(text);
+        String user = parseUser(text);
+        if (timestamp == Long.MIN_VALUE || user == null) {
+            return null;
+        }
+        int actionStart = 22 + user.length() + 3;
+        int colon = text.indexOf(": ", actionStart);
+        if (colon < 0) {
+            return null;
+        }
+        return new Transaction(null, user, text.substring(actionStart, colon), null, text.substring(colon + 2),
+                               LocalDateTime.ofEpochSecond(timestamp, 0, ZoneOffset.UTC));
+    }
+
+    synchronized int getSegmentCount() {
+        return segments.size() + (active.length > 0 ? 1 : 0);
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // Read-only; nothing to lose.
+        }
+    }
+
+    private static long blockEnd(Segment segment, List<Block> blocks, int i) {
+        return i + 1 < blocks.size() ? blocks.get(i + 1).offset : segment.length;
+    }
+
+    private static List<String> readBlock(FileChannel channel, Segment segment, List<Block> blocks, int i)
+            throws IOException {
+        byte[] bytes = readRange(channel, blocks.get(i).offset, blockEnd(segment, blocks, i));
+        if (segment.compressed) {
+            try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+                bytes = in.readAllBytes();
+            }
+        }
+        List<String> lines = new ArrayList<>();
+        for (String text : new String(bytes, CHARSET).split("\\r?\\n")) {
+            if (!text.isEmpty()) {
+                lines.add(text);
+            }
+        }
+        return lines;
+    }
+
+    private static byte[] readRange(FileChannel channel, long start, long end) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) (end - start));
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, start + buffer.position()) < 0) {
+                break;
+            }
+        }
+        return Arrays.copyOf(buffer.array(), buffer.position());
+    }
+
+    // Lines look like "[yyyy-MM-dd HH:mm:ss] user - ACTION: details".
+    static long parseTimestamp(String text) {
+        if (text.length() < 21 || text.charAt(0) != '[' || text.charAt(20) != ']') {
+            return Long.MIN_VALUE;
+        }
+        try {
+            return LocalDateTime.parse(text.substring(1, 20), TIMESTAMP_FORMAT).toEpochSecond(ZoneOffset.UTC);
+        } catch (DateTimeParseException e) {
+            return Long.MIN_VALUE;
+        }
+    }
+
+    static String parseUser(String text) {
+        int end = text.indexOf(" - ", 22);
+        return text.length() > 22 && text.charAt(20) == ']' && end > 0 ? text.substring(22, end) : null;
+    }
+
+    private static long userBits(String user) {
+        int hash = user == null ? 0 : user.hashCode();
+        return (1L << (hash & 63)) | (1L << ((hash >>> 6) & 63));
+    }
+}
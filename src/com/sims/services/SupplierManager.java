@@ -2,21 +2,29 @@ package com.sims.services;
 
 import com.sims.models.Supplier;
 import com.sims.utils.FileManager;
+import com.sims.utils.TextIndex;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.*;
+import java.util.stream.Collectors;
 
 public class SupplierManager {
     private List<Supplier> suppliers;
+    final private Map<String, Supplier> suppliersById;
+    final private TextIndex searchIndex;
     private static final String SUPPLIERS_FILE = "data/suppliers.dat";
     
     public SupplierManager() {
         this.suppliers = new ArrayList<>();
+        this.suppliersById = new HashMap<>();
+        this.searchIndex = new TextIndex();
         loadSuppliers();
     }
     
-    public boolean addSupplier(Supplier supplier) {
-        if (supplier != null && !suppliers.contains(supplier)) {
+    public synchronized boolean addSupplier(Supplier supplier) {
+        if (supplier != null && !suppliersById.containsKey(supplier.getId())) {
             suppliers.add(supplier);
+            indexSupplier(supplier);
             saveSuppliers();
             return true;
         }
@@ -28,26 +36,47 @@ public class SupplierManager {
     }
     
     public Supplier getSupplierById(String id) {
-        return suppliers.stream()
-                       .filter(s -> s.getId().equals(id))
-                       .findFirst()
-                       .orElse(null);
+        return id == null ? null : suppliersById.get(id);
+    }
+    
+    // Matches on supplier name rank above matches on the contact person.
+    public List<Supplier> searchSuppliers(String searchTerm, int limit) {
+        return searchIndex.search(searchTerm, limit).stream()
+                          .map(suppliersById::get)
+                          .collect(Collectors.toList());
+    }
+    
+    private void indexSupplier(Supplier supplier) {
+        suppliersById.put(supplier.getId(), supplier);
+        searchIndex.put(supplier.getId(), supplier.getName(), supplier.getContactPerson());
     }
     
     private void loadSuppliers() {
         try {
-            Object data = FileManager.loadData(SUPPLIERS_FILE);
-            if (data instanceof List<?>) {
-                this.suppliers = (List<Supplier>) data;
-            }
-        } catch (IOException | ClassNotFoundException e) {
+            FileManager.migrateIfLegacy(SUPPLIERS_FILE, Supplier.CODEC);
+            this.suppliers = FileManager.loadList(Supplier.CODEC, SUPPLIERS_FILE);
+            suppliers.forEach(this::indexSupplier);
+        } catch (FileNotFoundException e) {
+            this.suppliers = new ArrayList<>();
+        } catch (IOException e) {
+            String kept = FileManager.quarantine(SUPPLIERS_FILE);
+            System.err.println("Supplier data is unreadable (" + e.getMessage() + ")"
+                + (kept != null ? ", kept as " + kept : "") + ". Starting fresh.");
             this.suppliers = new ArrayList<>();
         }
     }
     
     private void saveSuppliers() {
+        PersistenceScheduler.markDirty(SUPPLIERS_FILE, this::writeSuppliers);
+    }
+    
+    private void writeSuppliers() {
+        List<Supplier> snapshot;
+        synchronized (this) {
+            snapshot = new ArrayList<>(suppliers);
+        }
         try {
-            FileManager.saveData(suppliers, SUPPLIERS_FILE);
+            FileManager.saveList(snapshot, Supplier.CODEC, SUPPLIERS_FILE);
         } catch (IOException e) {
             System.err.println("Error saving supplier data: " + e.getMessage());
         }
@@ -0,0 +1,256 @@
+package com.sims.services;
+
+import com.sims.models.Transaction;
+import java.io.File;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+// Appends transactions to the log from a single background thread. Callers
+// only enqueue; the writer drains whatever has queued up and writes it as
+// one batch to the segmented log, whose file stays open, so a burst of
+// events costs one write instead of an open/write/close each. Segments
+// rotate at sims.txlog.segmentBytes or sims.txlog.segmentHours, closed ones
+// are gzipped unless sims.txlog.compress=false, and with
+// sims.txlog.maxSegments > 0 only that many closed segments are kept.
+//
+// Flush policy: with sims.txlog.lingerMs > 0 the writer waits that long
+// after the first record of a batch for more to arrive, and with
+// sims.txlog.fsync=true each batch is forced to disk before it counts as
+// written. When the queue (sims.txlog.queueCapacity) is full, callers block
+// until there is room, or with sims.txlog.dropWhenFull=true the record is
+// dropped and counted instead.
+public class TransactionLogWriter {
+    private static final String TRANSACTIONS_FILE = "data/transactions.log";
+    private static final String SEGMENT_DIR = "data/txlog";
+    private static final String AUDIT_DIR = "data/audit";
+    private static final long SEGMENT_BYTES = Long.getLong("sims.txlog.segmentBytes", 8L * 1024 * 1024);
+    private static final long SEGMENT_HOURS = Long.getLong("sims.txlog.segmentHours", 24L);
+    private static final boolean COMPRESS_SEGMENTS =
+        Boolean.parseBoolean(System.getProperty("sims.txlog.compress", "true"));
+    private static final int MAX_SEGMENTS = Integer.getInteger("sims.txlog.maxSegments", 0);
+    private static final int QUEUE_CAPACITY = Math.max(1, Integer.getInteger("sims.txlog.queueCapacity", 8192));
+    private static final int MAX_BATCH = 4096;
+    private static final int FOLLOW_BUFFER = 10_000;
+    private static final long FOLLOW_POLL_MILLIS = 250;
+    private static final long LINGER_MILLIS = Long.getLong("sims.txlog.lingerMs", 0L);
+    private static final boolean FSYNC = Boolean.getBoolean("sims.txlog.fsync");
+    private static final boolean DROP_WHEN_FULL = Boolean.getBoolean("sims.txlog.dropWhenFull");
+
+    final private static BlockingQueue<Transaction> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    final private static AtomicLong enqueued = new AtomicLong();
+    final private static AtomicLong dropped = new AtomicLong();
+    final private static Object progress = new Object();
+    final private static List<BlockingQueue<String>> followers = new CopyOnWriteArrayList<>();
+    // Records taken off the queue and either written or given up on;
+    // guarded by `progress`.
+    private static long completed;
+    private static long failed;
+    final private static SegmentedTransactionLog log = new SegmentedTransactionLog(
+        new File(TRANSACTIONS_FILE), new File(SEGMENT_DIR), SEGMENT_BYTES, SEGMENT_HOURS * 3600,
+        COMPRESS_SEGMENTS, MAX_SEGMENTS);
+    // Opened by the writer thread before its first batch, since the first
+    // open may import the whole text log; null if it could not be opened.
+    private static volatile AuditStore audit;
+    final private static CountDownLatch auditOpened = new CountDownLatch(1);
+    final private static Thread writer = new Thread(TransactionLogWriter::run, "sims-txlog");
+
+    static {
+        writer.setDaemon(true);
+        writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(TransactionLogWriter::flush, "sims-txlog-shutdown"));
+    }
+
+    // The first time, history already in the text log is copied in.
+    private static AuditStore openAuditStore() {
+        try {
+            AuditStore store = new AuditStore(new File(AUDIT_DIR));
+            if (store.size() == 0) {
+                store.importFrom(log);
+            }
+            return store;
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Error opening audit store: " + e);
+            return null;
+        }
+    }
+    
+    public static void append(Transaction transaction) {
+        if (DROP_WHEN_FULL) {
+            if (!queue.offer(transaction)) {
+                dropped.incrementAndGet();
+                return;
+            }
+        } else {
+            try {
+                queue.put(transaction);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                dropped.incrementAndGet();
+                return;
+            }
+        }
+        enqueued.incrementAndGet();
+    }
+
+    // Blocks until everything appended so far has been written, e.g. before
+    // the log is read or copied. Returns early if the writer thread has
+    // died, since nothing would ever complete.
+    public static void flush() {
+        long target = enqueued.get();
+        synchronized (progress) {
+            while (completed < target && writer.isAlive()) {
+                try {
+                    progress.wait(100);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private static void run() {
+        try {
+            audit = openAuditStore();
+        } finally {
+            auditOpened.countDown();
+        }
+        List<Transaction> batch = new ArrayList<>(MAX_BATCH);
+        while (true) {
+            try {
+                batch.add(queue.take());
+                if (LINGER_MILLIS > 0) {
+                    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(LINGER_MILLIS);
+                    while (batch.size() < MAX_BATCH) {
+                        long remaining = deadline - System.nanoTime();
+                        Transaction next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : null;
+                        if (next == null) {
+                            break;
+                        }
+                        batch.add(next);
+                    }
+                }
+                queue.drainTo(batch, MAX_BATCH - batch.size());
+            } catch (InterruptedException e) {
+                // Daemon thread; keep serving until the JVM exits.
+            }
+
+            // Whatever goes wrong, the batch counts as completed, or flush()
+            // would wait for it forever.
+            try {
+                try {
+                    log.append(batch);
+                    if (FSYNC) {
+                        log.force();
+                    }
+                    if (!followers.isEmpty()) {
+                        for (Transaction transaction : batch) {
+                            String line = SegmentedTransactionLog.format(transaction);
+                            for (BlockingQueue<String> follower : followers) {
+                                follower.offer(line);
+                            }
+                        }
+                    }
+                } catch (IOException | RuntimeException e) {
+                    System.err.println("Error logging transaction: " + e);
+                    synchronized (progress) {
+                        failed += batch.size();
+                    }
+                }
+                if (audit != null) {
+                    try {
+                        audit.append(batch);
+                    } catch (IOException | RuntimeException e) {
+                        System.err.println("Error writing audit records: " + e);
+                    }
+                }
+            } finally {
+                synchronized (progress) {
+                    completed += batch.size();
+                    progress.notifyAll();
+                }
+            }
+            batch.clear();
+        }
+    }
+
+    // Queries wait for pending records, then read only the segments and
+    // blocks they need.
+    public static List<String> getRecent(int count) {
+        flush();
+        return log.tail(count);
+    }
+    
+    public static List<String> getBetween(LocalDateTime from, LocalDateTime to, int limit) {
+        flush();
+        return log.between(from, to, limit);
+    }
+    
+    public static List<String> getByUser(String username, int limit) {
+        flush();
+        return log.byUser(username, limit);
+    }
+    
+    // Passes each line written to the log from now on to `action`, on the
+    // calling thread, until `stopped` says so. A follower that falls more
+    // than FOLLOW_BUFFER lines behind misses lines rather than holding up
+    // the writer.
+    public static void follow(Consumer<String> action, BooleanSupplier stopped) {
+        BlockingQueue<String> lines = new ArrayBlockingQueue<>(FOLLOW_BUFFER);
+        followers.add(lines);
+        try {
+            while (!stopped.getAsBoolean()) {
+                String line = lines.poll(FOLLOW_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (line != null) {
+                    action.accept(line);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            followers.remove(lines);
+        }
+    }
+    
+    // Null if the store could not be opened. Pending records are written
+    // first, so queries see everything logged so far.
+    public static AuditStore getAuditStore() {
+        try {
+            while (writer.isAlive() && !auditOpened.await(100, TimeUnit.MILLISECONDS)) {
+                // An import of the old log is still running.
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        flush();
+        return audit;
+    }
+    
+    public static int getSegmentCount() {
+        return log.getSegmentCount();
+    }
+
+    public static int getQueueDepth() {
+        return queue.size();
+    }
+
+    public static long getWrittenCount() {
+        synchronized (progress) {
+            return completed - failed;
+        }
+    }
+
+    public static long getDroppedCount() {
+        return dropped.get();
+    }
+}
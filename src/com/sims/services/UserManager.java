@@ -2,6 +2,7 @@ package com.sims.services;
 
 import com.sims.models.User;
 import com.sims.utils.FileManager;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.time.LocalDateTime;
 import java.util.*;
@@ -15,7 +16,7 @@ public class UserManager {
         loadUsers();
     }
     
-    public boolean registerUser(String username, String password, String role) {
+    public synchronized boolean registerUser(String username, String password, String role) {
         if (getUserByUsername(username) != null) {
             return false;
         }
@@ -27,7 +28,7 @@ public class UserManager {
         return true;
     }
     
-    public User authenticateUser(String username, String password) {
+    public synchronized User authenticateUser(String username, String password) {
         User user = getUserByUsername(username);
         if (user != null && SecurityUtils.verifyPassword(password, user.getPasswordHash())) {
             user.setLastLogin(LocalDateTime.now());
@@ -48,7 +49,7 @@ public class UserManager {
         return new ArrayList<>(users);
     }
     
-    public boolean updateUser(User updatedUser) {
+    public synchronized boolean updateUser(User updatedUser) {
         for (int i = 0; i < users.size(); i++) {
             if (users.get(i).getUsername().equals(updatedUser.getUsername())) {
                 users.set(i, updatedUser);
@@ -59,7 +60,7 @@ public class UserManager {
         return false;
     }
     
-    public boolean deleteUser(String username) {
+    public synchronized boolean deleteUser(String username) {
         boolean removed = users.removeIf(user -> user.getUsername().equals(username));
         if (removed) {
             saveUsers();
@@ -69,19 +70,30 @@ public class UserManager {
     
     private void loadUsers() {
         try {
-            Object data = FileManager.loadData(USERS_FILE);
-            if (data instanceof List<?>) {
-                this.users = (List<User>) data;
-            }
-        } catch (IOException | ClassNotFoundException e) {
+            FileManager.migrateIfLegacy(USERS_FILE, User.CODEC);
+            this.users = FileManager.loadList(User.CODEC, USERS_FILE);
+        } catch (FileNotFoundException e) {
             System.out.println("No existing user data found. Starting fresh.");
             this.users = new ArrayList<>();
+        } catch (IOException e) {
+            String kept = FileManager.quarantine(USERS_FILE);
+            System.err.println("User data is unreadable (" + e.getMessage() + ")"
+                + (kept != null ? ", kept as " + kept : "") + ". Starting fresh.");
+            this.users = new ArrayList<>();
         }
     }
     
     private void saveUsers() {
+        PersistenceScheduler.markDirty(USERS_FILE, this::writeUsers);
+    }
+    
+    private void writeUsers() {
+        List<User> snapshot;
+        synchronized (this) {
+            snapshot = new ArrayList<>(users);
+        }
         try {
-            FileManager.saveData(users, USERS_FILE);
+            FileManager.saveList(snapshot, User.CODEC, USERS_FILE);
         } catch (IOException e) {
             System.err.println("Error saving user data: " + e.getMessage());
         }
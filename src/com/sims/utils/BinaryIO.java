@@ -0,0 +1,129 @@
+package com.sims.utils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+// Primitives for the binary data format: LEB128 varints, length-prefixed
+// UTF-8 strings and dates as epoch days. Nullable values are written with
+// the length/value shifted by one so that 0 can mean null.
+public class BinaryIO {
+    
+    public static void writeVarInt(DataOutput out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+    
+    public static int readVarInt(DataInput in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+    
+    public static void writeVarLong(DataOutput out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+    
+    public static long readVarLong(DataInput in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 70; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varlong");
+    }
+    
+    // Zig-zag keeps small negative numbers (quantities, day offsets) short.
+    public static void writeSignedVarInt(DataOutput out, int value) throws IOException {
+        writeVarInt(out, (value << 1) ^ (value >> 31));
+    }
+    
+    public static int readSignedVarInt(DataInput in) throws IOException {
+        int raw = readVarInt(in);
+        return (raw >>> 1) ^ -(raw & 1);
+    }
+    
+    public static void writeSignedVarLong(DataOutput out, long value) throws IOException {
+        writeVarLong(out, (value << 1) ^ (value >> 63));
+    }
+    
+    public static long readSignedVarLong(DataInput in) throws IOException {
+        long raw = readVarLong(in);
+        return (raw >>> 1) ^ -(raw & 1);
+    }
+    
+    public static void writeString(DataOutput out, String value) throws IOException {
+        if (value == null) {
+            writeVarInt(out, 0);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(out, bytes.length + 1);
+        out.write(bytes);
+    }
+    
+    public static String readString(DataInput in) throws IOException {
+        int length = readVarInt(in);
+        if (length == 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length - 1];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+    
+    public static void writeDate(DataOutput out, LocalDate date) throws IOException {
+        if (date == null) {
+            out.writeByte(0);
+            return;
+        }
+        out.writeByte(1);
+        writeSignedVarLong(out, date.toEpochDay());
+    }
+    
+    public static LocalDate readDate(DataInput in) throws IOException {
+        if (in.readByte() == 0) {
+            return null;
+        }
+        return LocalDate.ofEpochDay(readSignedVarLong(in));
+    }
+    
+    public static void writeDateTime(DataOutput out, LocalDateTime dateTime) throws IOException {
+        if (dateTime == null) {
+            out.writeByte(0);
+            return;
+        }
+        out.writeByte(1);
+        writeSignedVarLong(out, dateTime.toEpochSecond(ZoneOffset.UTC));
+        writeVarInt(out, dateTime.getNano());
+    }
+    
+    public static LocalDateTime readDateTime(DataInput in) throws IOException {
+        if (in.readByte() == 0) {
+            return null;
+        }
+        long seconds = readSignedVarLong(in);
+        int nanos = readVarInt(in);
+        return LocalDateTime.ofEpochSecond(seconds, nanos, ZoneOffset.UTC);
+    }
+}
@@ -0,0 +1,22 @@
+package com.sims.utils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+// Hand-written binary encoding for one model class. The schema version is
+// stored in each file header and handed back to read() so older layouts
+// stay readable after a field is added.
+public interface Codec<T> {
+    int schemaVersion();
+    
+    void write(DataOutput out, T value) throws IOException;
+    
+    T read(DataInput in, int schemaVersion) throws IOException;
+    
+    // Reads only the record's identifying key, for codecs whose records start
+    // with one; used to index mapped files without decoding whole records.
+    default String readKey(DataInput in, int schemaVersion) throws IOException {
+        return null;
+    }
+}
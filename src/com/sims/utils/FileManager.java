@@ -1,16 +1,35 @@
 package com.sims.utils;
 
 import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
 
 public class FileManager {
+    static final int BINARY_MAGIC = 0x53494D42; // "SIMB"
+    static final int BINARY_FORMAT_VERSION = 3;
+    static final int OFFSET_TABLE_MAGIC = 0x53494F54; // "SIOT"
+    private static final int JAVA_SERIALIZATION_MAGIC = 0xACED;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    
+    // Group commit for append-only files: fsync once per this many writes or
+    // once the oldest unsynced write is this old, whichever comes first.
+    // A delay of 0 sets no age limit. The default of one write means every
+    // append is forced to disk.
+    private static volatile int groupCommitWrites = Integer.getInteger("sims.groupCommit.maxWrites", 1);
+    private static volatile long groupCommitDelayMillis = Long.getLong("sims.groupCommit.maxDelayMs", 0L);
     
     public static void saveData(Object data, String filename) throws IOException {
-        File file = new File(filename);
-        file.getParentFile().mkdirs();
-        
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(file))) {
+        writeAtomically(filename, out -> {
+            ObjectOutputStream oos = new ObjectOutputStream(new BufferedOutputStream(out, BUFFER_SIZE));
             oos.writeObject(data);
-        }
+            oos.flush();
+        });
     }
     
     public static Object loadData(String filename) throws IOException, ClassNotFoundException {
@@ -24,6 +43,232 @@ public class FileManager {
         }
     }
     
+    // Binary list format: [magic][format version][schema version][count][records...]
+    // followed by a fixed-width offset table (since version 2), which lets
+    // MappedRecordStore reach any record without decoding the ones before it,
+    // and the trailer [table position:long][count:int][crc32:int][table magic:int].
+    // The CRC (since version 3) covers every byte before it.
+    public static <T> void saveList(List<T> data, Codec<T> codec, String filename) throws IOException {
+        writeAtomically(filename, stream -> {
+            CheckedOutputStream checked = new CheckedOutputStream(stream, new CRC32());
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(checked, BUFFER_SIZE));
+            out.writeInt(BINARY_MAGIC);
+            out.writeByte(BINARY_FORMAT_VERSION);
+            BinaryIO.writeVarInt(out, codec.schemaVersion());
+            BinaryIO.writeVarInt(out, data.size());
+            
+            long[] offsets = new long[data.size()];
+            int i = 0;
+            for (T value : data) {
+                offsets[i++] = out.size();
+                codec.write(out, value);
+            }
+            
+            long tablePosition = out.size();
+            for (long offset : offsets) {
+                out.writeLong(offset);
+            }
+            out.writeLong(tablePosition);
+            out.writeInt(offsets.length);
+            if (out.size() == Integer.MAX_VALUE) {
+                throw new IOException("Data file too large: " + filename);
+            }
+            
+            out.flush();
+            out.writeInt((int) checked.getChecksum().getValue());
+            out.writeInt(OFFSET_TABLE_MAGIC);
+            out.flush();
+        });
+    }
+    
+    public static <T> List<T> loadList(Codec<T> codec, String filename) throws IOException {
+        File file = new File(filename);
+        if (!file.exists()) {
+            throw new FileNotFoundException("Data file not found: " + filename);
+        }
+        
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE))) {
+            if (in.readInt() != BINARY_MAGIC) {
+                throw new IOException("Not a SIMS binary data file: " + filename);
+            }
+            int formatVersion = in.readUnsignedByte();
+            if (formatVersion >= 3) {
+                verifyChecksum(file);
+            }
+            int schemaVersion = readSchemaVersion(in, formatVersion, codec, filename);
+            
+            int count = BinaryIO.readVarInt(in);
+            List<T> data = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                data.add(codec.read(in, schemaVersion));
+            }
+            return data;
+        } catch (EOFException e) {
+            throw new IOException("Truncated data file: " + filename, e);
+        }
+    }
+    
+    private static void verifyChecksum(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            long covered = raf.length() - 8;
+            if (covered < 5) {
+                throw new IOException("Truncated data file: " + file.getPath());
+            }
+            raf.seek(covered);
+            int expected = raf.readInt();
+            
+            CRC32 crc = new CRC32();
+            byte[] buffer = new byte[BUFFER_SIZE];
+            raf.seek(0);
+            long remaining = covered;
+            while (remaining > 0) {
+                int n = raf.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (n < 0) {
+                    throw new EOFException();
+                }
+                crc.update(buffer, 0, n);
+                remaining -= n;
+            }
+            if ((int) crc.getValue() != expected) {
+                throw new IOException("Checksum mismatch in " + file.getPath());
+            }
+        }
+    }
+    
+    static int trailerSize(int formatVersion) {
+        return formatVersion >= 3 ? 20 : 16;
+    }
+    
+    public interface StreamWriter {
+        void writeTo(OutputStream out) throws IOException;
+    }
+    
+    // Writes to a temp file next to the target, forces it to disk and renames
+    // it over the target, so readers only ever see the old or the new file.
+    public static void writeAtomically(String filename, StreamWriter writer) throws IOException {
+        File file = new File(filename);
+        File dir = file.getAbsoluteFile().getParentFile();
+        dir.mkdirs();
+        File temp = new File(dir, file.getName() + ".tmp");
+        
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            writer.writeTo(out);
+            out.getChannel().force(true);
+        } catch (IOException e) {
+            temp.delete();
+            throw e;
+        }
+        
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        syncDirectory(dir);
+    }
+    
+    // Makes the rename itself durable. Not every platform lets a directory be
+    // opened for this, in which case the rename is left to the OS.
+    private static void syncDirectory(File dir) {
+        try (FileChannel channel = FileChannel.open(dir.toPath(), StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // best effort
+        }
+    }
+    
+    // Moves an unreadable data file aside so the next save can't overwrite it.
+    public static String quarantine(String filename) {
+        String target = filename + ".corrupt-" + System.currentTimeMillis();
+        if (new File(filename).renameTo(new File(target))) {
+            return target;
+        }
+        return null;
+    }
+    
+    static int readSchemaVersion(DataInput in, int formatVersion, Codec<?> codec, String filename) throws IOException {
+        if (formatVersion < 1 || formatVersion > BINARY_FORMAT_VERSION) {
+            throw new IOException("Unsupported data format version " + formatVersion + " in " + filename);
+        }
+        int schemaVersion = BinaryIO.readVarInt(in);
+        if (schemaVersion > codec.schemaVersion()) {
+            throw new IOException("Data file " + filename + " was written by a newer version");
+        }
+        return schemaVersion;
+    }
+    
+    // Rewrites a data file produced by the old Java-serialization format in the
+    // binary format. Returns false if the file is missing or already migrated.
+    @SuppressWarnings("unchecked")
+    public static <T> boolean migrateIfLegacy(String filename, Codec<T> codec) throws IOException {
+        if (!isLegacyFormat(filename)) {
+            return false;
+        }
+        
+        try {
+            Object data = loadData(filename);
+            List<T> list = data instanceof List<?> ? (List<T>) data : new ArrayList<>();
+            saveList(list, codec, filename);
+            System.out.println("Migrated " + filename + " to the binary data format (" + list.size() + " records).");
+            return true;
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Cannot migrate " + filename + ": " + e.getMessage(), e);
+        }
+    }
+    
+    public static boolean isLegacyFormat(String filename) throws IOException {
+        File file = new File(filename);
+        if (!file.exists() || file.length() < 2) {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            return in.readUnsignedShort() == JAVA_SERIALIZATION_MAGIC;
+        }
+    }
+    
+    public static <T> byte[] encode(Codec<T> codec, T value) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            BinaryIO.writeVarInt(out, codec.schemaVersion());
+            codec.write(out, value);
+        }
+        return bytes.toByteArray();
+    }
+    
+    public static <T> T decode(Codec<T> codec, byte[] data) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        int schemaVersion = BinaryIO.readVarInt(in);
+        return codec.read(in, schemaVersion);
+    }
+    
+    public static byte[] toBytes(Object data) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(bytes)) {
+            oos.writeObject(data);
+        }
+        return bytes.toByteArray();
+    }
+    
+    public static Object fromBytes(byte[] data) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(data))) {
+            return ois.readObject();
+        }
+    }
+    
+    public static boolean isSerializedObject(byte[] data) {
+        return data.length >= 2 && ((data[0] & 0xFF) << 8 | (data[1] & 0xFF)) == JAVA_SERIALIZATION_MAGIC;
+    }
+    
+    public static void setGroupCommit(int maxWrites, long maxDelayMillis) {
+        groupCommitWrites = Math.max(1, maxWrites);
+        groupCommitDelayMillis = Math.max(0, maxDelayMillis);
+    }
+    
+    public static int getGroupCommitWrites() {
+        return groupCommitWrites;
+    }
+    
+    public static long getGroupCommitDelayMillis() {
+        return groupCommitDelayMillis;
+    }
+    
     public static boolean fileExists(String filename) {
         return new File(filename).exists();
     }
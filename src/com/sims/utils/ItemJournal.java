@@ -0,0 +1,229 @@
+package com.sims.utils;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+// Append-only journal of keyed records. Each record is
+// [int length][int crc32][byte op][utf key][payload], so a torn tail can be
+// detected on replay and cut off without losing the records before it.
+public class ItemJournal implements Closeable {
+    public static final byte OP_PUT = 1;
+    public static final byte OP_DELETE = 2;
+
+    private static final int HEADER_SIZE = 8;
+    // Keeps the group-commit age limit when no later append comes along to
+    // trigger the sync.
+    private static final ScheduledExecutorService syncTimer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "sims-journal-sync");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public interface Visitor {
+        void onPut(String key, byte[] payload) throws IOException;
+        void onDelete(String key) throws IOException;
+    }
+
+    public static final class Entry {
+        final byte op;
+        final String key;
+        final byte[] payload;
+
+        private Entry(byte op, String key, byte[] payload) {
+            this.op = op;
+            this.key = key;
+            this.payload = payload;
+        }
+
+        public static Entry put(String key, byte[] payload) {
+            return new Entry(OP_PUT, key, payload);
+        }
+
+        public static Entry delete(String key) {
+            return new Entry(OP_DELETE, key, new byte[0]);
+        }
+    }
+
+    final private File file;
+    private FileChannel channel;
+    private int recordCount;
+    private int unsyncedWrites;
+    private long oldestUnsyncedAt;
+    private ScheduledFuture<?> timedSync;
+
+    public ItemJournal(String filename) throws IOException {
+        this.file = new File(filename);
+        File parent = file.getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+        this.channel = FileChannel.open(file.toPath(),
+            StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.READ);
+    }
+
+    // Writes a batch of records, then fsyncs as the group-commit policy in
+    // FileManager says: by default once per batch.
+    public synchronized void appendAll(List<Entry> entries) throws IOException {
+        for (Entry entry : entries) {
+            write(entry.op, entry.key, entry.payload);
+        }
+        syncIfDue();
+    }
+
+    private void write(byte op, String key, byte[] payload) throws IOException {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        int bodyLength = 1 + 2 + keyBytes.length + payload.length;
+
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + bodyLength);
+        buffer.putInt(bodyLength);
+        buffer.putInt(0);
+        buffer.put(op);
+        buffer.putShort((short) keyBytes.length);
+        buffer.put(keyBytes);
+        buffer.put(payload);
+        buffer.putInt(4, checksum(buffer.array(), HEADER_SIZE, bodyLength));
+        buffer.flip();
+
+        channel.position(channel.size());
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        recordCount++;
+        if (unsyncedWrites++ == 0) {
+            oldestUnsyncedAt = System.currentTimeMillis();
+        }
+    }
+
+    // A delay limit of 0 means writes are only counted, not aged.
+    private void syncIfDue() throws IOException {
+        long maxDelay = FileManager.getGroupCommitDelayMillis();
+        long age = System.currentTimeMillis() - oldestUnsyncedAt;
+        if (unsyncedWrites >= FileManager.getGroupCommitWrites() || maxDelay > 0 && age >= maxDelay) {
+            sync();
+        } else if (maxDelay > 0 && unsyncedWrites > 0 && timedSync == null) {
+            timedSync = syncTimer.schedule(this::syncOnTimer, maxDelay - age, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private synchronized void syncOnTimer() {
+        timedSync = null;
+        try {
+            sync();
+        } catch (IOException e) {
+            System.err.println("Error syncing " + file.getName() + ": " + e.getMessage());
+        }
+    }
+
+    private void cancelTimedSync() {
+        if (timedSync != null) {
+            timedSync.cancel(false);
+            timedSync = null;
+        }
+    }
+
+    // Appended records always reach the OS right away; with group commit they
+    // may wait here for the next fsync, so only a machine crash can lose them.
+    public synchronized void sync() throws IOException {
+        cancelTimedSync();
+        if (unsyncedWrites > 0 && channel.isOpen()) {
+            channel.force(false);
+            unsyncedWrites = 0;
+        }
+    }
+
+    // Replays every intact record in order and truncates anything after the
+    // first torn or corrupt record. Returns the number of records replayed.
+    public synchronized int replay(Visitor visitor) throws IOException {
+        long validLength = 0;
+        int replayed = 0;
+
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file), 64 * 1024))) {
+            while (true) {
+                int bodyLength;
+                try {
+                    bodyLength = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                if (bodyLength < 3 || bodyLength > channel.size()) {
+                    break;
+                }
+
+                byte[] body = new byte[bodyLength];
+                int crc;
+                try {
+                    crc = in.readInt();
+                    in.readFully(body);
+                } catch (EOFException e) {
+                    break;
+                }
+                if (checksum(body, 0, bodyLength) != crc) {
+                    break;
+                }
+
+                byte op = body[0];
+                int keyLength = ((body[1] & 0xFF) << 8) | (body[2] & 0xFF);
+                if (3 + keyLength > bodyLength) {
+                    break;
+                }
+                String key = new String(body, 3, keyLength, StandardCharsets.UTF_8);
+
+                if (op == OP_PUT) {
+                    byte[] payload = new byte[bodyLength - 3 - keyLength];
+                    System.arraycopy(body, 3 + keyLength, payload, 0, payload.length);
+                    visitor.onPut(key, payload);
+                } else if (op == OP_DELETE) {
+                    visitor.onDelete(key);
+                } else {
+                    break;
+                }
+
+                validLength += HEADER_SIZE + bodyLength;
+                replayed++;
+            }
+        }
+
+        if (validLength < channel.size()) {
+            System.err.println("Discarding " + (channel.size() - validLength)
+                + " bytes of incomplete journal data in " + file.getName());
+            channel.truncate(validLength);
+        }
+        recordCount = replayed;
+        return replayed;
+    }
+
+    // Called once the journal's contents have been folded into a snapshot.
+    public synchronized void reset() throws IOException {
+        channel.truncate(0);
+        channel.force(true);
+        recordCount = 0;
+        unsyncedWrites = 0;
+        cancelTimedSync();
+    }
+
+    public synchronized int getRecordCount() {
+        return recordCount;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        sync();
+        channel.close();
+    }
+
+    private static int checksum(byte[] data, int offset, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(data, offset, length);
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,164 @@
+package com.sims.utils;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+// Read-only, memory-mapped view of a binary list file written by
+// FileManager.saveList. Records are decoded on access straight from the
+// mapping via the offset table, so opening is O(1) and nothing is kept on
+// the heap beyond the optional key index. The file checksum is not verified
+// here, since that would mean reading the whole file; loadList checks it.
+public class MappedRecordStore<T> implements Closeable {
+    final private String filename;
+    final private Codec<T> codec;
+    final private FileChannel channel;
+    final private MappedByteBuffer buffer;
+    final private int schemaVersion;
+    final private int count;
+    final private long tablePosition;
+    private Map<String, Integer> keyIndex;
+    
+    private MappedRecordStore(String filename, Codec<T> codec, FileChannel channel, MappedByteBuffer buffer,
+                              int schemaVersion, int count, long tablePosition) {
+        this.filename = filename;
+        this.codec = codec;
+        this.channel = channel;
+        this.buffer = buffer;
+        this.schemaVersion = schemaVersion;
+        this.count = count;
+        this.tablePosition = tablePosition;
+    }
+    
+    public static <T> MappedRecordStore<T> open(String filename, Codec<T> codec) throws IOException {
+        File file = new File(filename);
+        if (!file.exists()) {
+            throw new FileNotFoundException("Data file not found: " + filename);
+        }
+        
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Data file too large to map: " + filename);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            
+            if (size < 5 + 20 || buffer.getInt(0) != FileManager.BINARY_MAGIC) {
+                throw new IOException("Not a SIMS binary data file: " + filename);
+            }
+            int formatVersion = buffer.get(4) & 0xFF;
+            if (formatVersion < 2) {
+                throw new IOException(filename + " has no offset table; re-save it before mapping");
+            }
+            int schemaVersion = FileManager.readSchemaVersion(
+                new DataInputStream(new BufferInputStream(buffer, 5)), formatVersion, codec, filename);
+            
+            int trailer = (int) size - FileManager.trailerSize(formatVersion);
+            long tablePosition = buffer.getLong(trailer);
+            int count = buffer.getInt(trailer + 8);
+            if (buffer.getInt((int) size - 4) != FileManager.OFFSET_TABLE_MAGIC
+                    || tablePosition + (long) count * 8 != trailer) {
+                throw new IOException("Corrupt offset table in " + filename);
+            }
+            
+            return new MappedRecordStore<>(filename, codec, channel, buffer, schemaVersion, count, tablePosition);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+    
+    public int size() {
+        return count;
+    }
+    
+    public T get(int index) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("Record " + index + " of " + count);
+        }
+        int offset = (int) buffer.getLong((int) tablePosition + index * 8);
+        try {
+            return codec.read(new DataInputStream(new BufferInputStream(buffer, offset)), schemaVersion);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Corrupt record " + index + " in " + filename, e);
+        }
+    }
+    
+    // Looks a record up by the key its codec exposes (e.g. item id). The first
+    // call scans only the keys; the records themselves are never materialized.
+    public T find(String key) {
+        if (keyIndex == null) {
+            keyIndex = buildKeyIndex();
+        }
+        Integer index = keyIndex.get(key);
+        return index == null ? null : get(index);
+    }
+    
+    private Map<String, Integer> buildKeyIndex() {
+        Map<String, Integer> index = new HashMap<>(count * 2);
+        for (int i = 0; i < count; i++) {
+            int offset = (int) buffer.getLong((int) tablePosition + i * 8);
+            try {
+                String key = codec.readKey(new DataInputStream(new BufferInputStream(buffer, offset)), schemaVersion);
+                if (key == null) {
+                    throw new UnsupportedOperationException("Records in " + filename + " have no key");
+                }
+                index.put(key, i);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Corrupt record " + i + " in " + filename, e);
+            }
+        }
+        return index;
+    }
+    
+    // Random-access list view; each get() decodes a fresh object.
+    public List<T> asList() {
+        return new ReadOnlyList();
+    }
+    
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+    
+    private class ReadOnlyList extends AbstractList<T> implements RandomAccess {
+        @Override
+        public T get(int index) {
+            return MappedRecordStore.this.get(index);
+        }
+        
+        @Override
+        public int size() {
+            return count;
+        }
+    }
+    
+    // Streams bytes from a private cursor over the shared mapping.
+    private static class BufferInputStream extends InputStream {
+        final private ByteBuffer view;
+        
+        BufferInputStream(ByteBuffer buffer, int position) {
+            this.view = buffer.duplicate();
+            this.view.position(position);
+        }
+        
+        @Override
+        public int read() {
+            return view.hasRemaining() ? view.get() & 0xFF : -1;
+        }
+        
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (!view.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, view.remaining());
+            view.get(b, off, n);
+            return n;
+        }
+    }
+}
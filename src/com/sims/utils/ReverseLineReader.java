@@ -0,0 +1,115 @@
+package com.sims.utils;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+// Reads a text file's lines last to first, seeking back from the end in
+// blocks, so reading the last N lines costs about N lines of I/O however
+// large the file is. Lines are split on '\n' bytes (a trailing '\r' is
+// dropped), which is safe for UTF-8 and other ASCII-compatible charsets.
+public class ReverseLineReader implements Closeable {
+    private static final int BLOCK_SIZE = 8192;
+
+    final private FileChannel channel;
+    final private boolean ownsChannel;
+    final private Charset charset;
+    final private ByteBuffer block = ByteBuffer.allocate(BLOCK_SIZE);
+    // Start of the bytes not yet read, i.e. everything before it.
+    private long position;
+    // Unread bytes of the current block are block[0, blockEnd).
+    private int blockEnd;
+    // The end of a line whose start is in an earlier block.
+    private byte[] carry = new byte[0];
+    private boolean atEnd = true;
+    // Whether a line, possibly empty, is still to come before the newline
+    // last consumed (or before the end, for a file not yet read).
+    private boolean lineBefore;
+
+    public ReverseLineReader(File file, Charset charset) throws IOException {
+        this(FileChannel.open(file.toPath(), StandardOpenOption.READ), -1, charset, true);
+    }
+
+    // Reads the lines of `channel` before `end`; the channel is left open.
+    public ReverseLineReader(FileChannel channel, long end, Charset charset) throws IOException {
+        this(channel, end, charset, false);
+    }
+
+    private ReverseLineReader(FileChannel channel, long end, Charset charset, boolean ownsChannel)
+            throws IOException {
+        this.channel = channel;
+        this.ownsChannel = ownsChannel;
+        this.charset = charset;
+        this.position = end < 0 ? channel.size() : end;
+        this.lineBefore = position > 0;
+    }
+
+    // The line before the last one returned, or null at the start of the file.
+    public String readLine() throws IOException {
+        while (true) {
+            for (int i = blockEnd - 1; i >= 0; i--) {
+                if (block.get(i) != '\n') {
+                    continue;
+                }
+                byte[] line = join(i + 1, blockEnd);
+                blockEnd = i;
+                lineBefore = true;
+                if (atEnd) {
+                    // The newline ending the last line does not start another.
+                    atEnd = false;
+                    if (line.length == 0) {
+                        continue;
+                    }
+                }
+                return decode(line);
+            }
+
+            if (position == 0) {
+                if (!lineBefore) {
+                    return null;
+                }
+                byte[] line = join(0, blockEnd);
+                blockEnd = 0;
+                atEnd = false;
+                lineBefore = false;
+                return decode(line);
+            }
+
+            carry = join(0, blockEnd);
+            int length = (int) Math.min(BLOCK_SIZE, position);
+            position -= length;
+            block.clear().limit(length);
+            while (block.hasRemaining()) {
+                if (channel.read(block, position + block.position()) < 0) {
+                    throw new IOException("File shrank while being read");
+                }
+            }
+            blockEnd = length;
+        }
+    }
+
+    // Bytes block[from, to) followed by the carried line end.
+    private byte[] join(int from, int to) {
+        byte[] bytes = Arrays.copyOf(Arrays.copyOfRange(block.array(), from, to), to - from + carry.length);
+        System.arraycopy(carry, 0, bytes, to - from, carry.length);
+        carry = new byte[0];
+        return bytes;
+    }
+
+    private String decode(byte[] line) {
+        int length = line.length > 0 && line[line.length - 1] == '\r' ? line.length - 1 : line.length;
+        return new String(line, 0, length, charset);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (ownsChannel) {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package com.sims.utils;
+
+import java.util.*;
+
+// Trigram inverted index over a few text fields per key. Candidates come from
+// intersecting the postings of the query's trigrams and are then verified and
+// ranked; earlier fields rank above later ones, exact > word prefix > substring.
+public class TextIndex {
+    private static final int GRAM_LENGTH = 3;
+    private static final int MATCHES_PER_FIELD = 3;
+    private static final int NO_MATCH = Integer.MAX_VALUE;
+    private static final int MIN_REBUILD_TOMBSTONES = 1024;
+
+    private static final class Document {
+        final String key;
+        final String[] fields;
+        final long order;
+
+        Document(String key, String[] fields, long order) {
+            this.key = key;
+            this.fields = fields;
+            this.order = order;
+        }
+    }
+
+    private static final class Postings {
+        int[] docs = new int[4];
+        int size;
+
+        void add(int doc) {
+            if (size > 0 && docs[size - 1] == doc) {
+                return;
+            }
+            if (size == docs.length) {
+                docs = Arrays.copyOf(docs, size * 2);
+            }
+            docs[size++] = doc;
+        }
+    }
+
+    private Document[] docs = new Document[64];
+    private int docCount;
+    private int liveCount;
+    private long nextOrder;
+    final private Map<String, Integer> docsByKey = new HashMap<>();
+    private Map<Long, Postings> postings = new HashMap<>();
+
+    public void put(String key, String... fields) {
+        Integer existing = docsByKey.get(key);
+        long order = existing != null ? docs[existing].order : nextOrder++;
+        if (existing != null) {
+            tombstone(existing);
+        }
+
+        String[] normalized = new String[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            normalized[i] = fields[i] == null ? "" : fields[i].toLowerCase();
+        }
+        addDocument(new Document(key, normalized, order));
+        rebuildIfNeeded();
+    }
+
+    public void remove(String key) {
+        Integer existing = docsByKey.remove(key);
+        if (existing != null) {
+            tombstone(existing);
+            rebuildIfNeeded();
+        }
+    }
+
+    public void clear() {
+        docs = new Document[64];
+        docCount = 0;
+        liveCount = 0;
+        docsByKey.clear();
+        postings = new HashMap<>();
+    }
+
+    public int size() {
+        return liveCount;
+    }
+
+    // Keys whose fields contain the term, best matches first.
+    public List<String> search(String term, int limit) {
+        return query(term, limit, false);
+    }
+
+    // Keys with a word in any field starting with the term, best matches first.
+    public List<String> searchPrefix(String term, int limit) {
+        return query(term, limit, true);
+    }
+
+    private List<String> query(String term, int limit, boolean prefixOnly) {
+        String needle = term == null ? "" : term.trim().toLowerCase();
+        if (limit <= 0) {
+            return new ArrayList<>();
+        }
+
+        int[] candidates = candidates(needle);
+        List<long[]> hits = new ArrayList<>();
+        for (int doc : candidates) {
+            Document document = docs[doc];
+            if (document == null) {
+                continue;
+            }
+            int score = score(document, needle, prefixOnly);
+            if (score != NO_MATCH) {
+                hits.add(new long[] { score, document.order, doc });
+            }
+        }
+
+        hits.sort((a, b) -> a[0] != b[0] ? Long.compare(a[0], b[0]) : Long.compare(a[1], b[1]));
+
+        List<String> keys = new ArrayList<>(Math.min(limit, hits.size()));
+        for (int i = 0; i < hits.size() && keys.size() < limit; i++) {
+            keys.add(docs[(int) hits.get(i)[2]].key);
+        }
+        return keys;
+    }
+
+    // Terms shorter than a trigram can't use the postings and fall back to
+    // checking every live document.
+    private int[] candidates(String needle) {
+        if (needle.length() < GRAM_LENGTH) {
+            int[] all = new int[docCount];
+            for (int i = 0; i < docCount; i++) {
+                all[i] = i;
+            }
+            return all;
+        }
+
+        List<Postings> lists = new ArrayList<>();
+        for (int i = 0; i + GRAM_LENGTH <= needle.length(); i++) {
+            Postings list = postings.get(gram(needle, i));
+            if (list == null) {
+                return new int[0];
+            }
+            lists.add(list);
+        }
+        lists.sort(Comparator.comparingInt(list -> list.size));
+
+        int[] result = Arrays.copyOf(lists.get(0).docs, lists.get(0).size);
+        int resultSize = result.length;
+        for (int l = 1; l < lists.size() && resultSize > 0; l++) {
+            Postings other = lists.get(l);
+            int i = 0, j = 0, k = 0;
+            while (i < resultSize && j < other.size) {
+                if (result[i] < other.docs[j]) {
+                    i++;
+                } else if (result[i] > other.docs[j]) {
+                    j++;
+                } else {
+                    result[k++] = result[i];
+                    i++;
+                    j++;
+                }
+            }
+            resultSize = k;
+        }
+        return Arrays.copyOf(result, resultSize);
+    }
+
+    private static int score(Document document, String needle, boolean prefixOnly) {
+        for (int f = 0; f < document.fields.length; f++) {
+            String field = document.fields[f];
+            if (field.equals(needle)) {
+                return f * MATCHES_PER_FIELD;
+            }
+
+            int at = field.indexOf(needle);
+            boolean found = at >= 0;
+            while (at >= 0) {
+                if (at == 0 || !Character.isLetterOrDigit(field.charAt(at - 1))) {
+                    return f * MATCHES_PER_FIELD + 1;
+                }
+                at = field.indexOf(needle, at + 1);
+            }
+            if (found && !prefixOnly) {
+                return f * MATCHES_PER_FIELD + 2;
+            }
+        }
+        return NO_MATCH;
+    }
+
+    private void addDocument(Document document) {
+        if (docCount == docs.length) {
+            docs = Arrays.copyOf(docs, docCount * 2);
+        }
+        int doc = docCount++;
+        docs[doc] = document;
+        docsByKey.put(document.key, doc);
+        liveCount++;
+
+        for (String field : document.fields) {
+            for (int i = 0; i + GRAM_LENGTH <= field.length(); i++) {
+                postings.computeIfAbsent(gram(field, i), g -> new Postings()).add(doc);
+            }
+        }
+    }
+
+    private void tombstone(int doc) {
+        docs[doc] = null;
+        liveCount--;
+    }
+
+    // Deleted and superseded documents stay in the postings until they
+    // outnumber the live ones, then everything is renumbered in one pass.
+    private void rebuildIfNeeded() {
+        int tombstones = docCount - liveCount;
+        if (tombstones < MIN_REBUILD_TOMBSTONES || tombstones < liveCount) {
+            return;
+        }
+
+        Document[] live = new Document[liveCount];
+        int n = 0;
+        for (int i = 0; i < docCount; i++) {
+            if (docs[i] != null) {
+                live[n++] = docs[i];
+            }
+        }
+
+        clear();
+        for (Document document : live) {
+            addDocument(document);
+        }
+    }
+
+    private static long gram(String text, int offset) {
+        return ((long) text.charAt(offset) << 32)
+            | ((long) text.charAt(offset + 1) << 16)
+            | text.charAt(offset + 2);
+    }
+}
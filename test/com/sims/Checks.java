@@ -0,0 +1,24 @@
+package com.sims;
+
+// Minimal assertions for the main()-driven tests and benchmarks under test/,
+// which build without any test framework.
+public final class Checks {
+    private Checks() {
+    }
+
+    public static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+
+    public static void checkEquals(Object expected, Object actual, String message) {
+        if (expected == null ? actual != null : !expected.equals(actual)) {
+            throw new AssertionError(message + ": expected <" + expected + "> but was <" + actual + ">");
+        }
+    }
+
+    public static void pass(String name) {
+        System.out.println("PASS " + name);
+    }
+}
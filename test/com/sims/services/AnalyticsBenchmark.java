@@ -0,0 +1,47 @@
+package com.sims.services;
+
+import static com.sims.Checks.*;
+
+import com.sims.models.Item;
+import java.util.List;
+import java.util.Map;
+
+// Sequential against parallel getInventoryAnalytics at several catalog
+// sizes, checking that both modes agree. Usage: AnalyticsBenchmark
+// [sizes...] (default 100000 1000000; 10M items needs about -Xmx4g).
+public class AnalyticsBenchmark {
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) {
+        int[] sizes = args.length > 0 ? new int[args.length] : new int[] {100_000, 1_000_000};
+        for (int i = 0; i < args.length; i++) {
+            sizes[i] = Integer.parseInt(args[i]);
+        }
+        System.out.println("cores: " + Runtime.getRuntime().availableProcessors());
+        for (int size : sizes) {
+            List<Item> items = AnalyticsTest.generate(size, size);
+            Map<String, Object> sequential = AnalyticsService.getInventoryAnalytics(items, false);
+            Map<String, Object> parallel = AnalyticsService.getInventoryAnalytics(items, true);
+            checkEquals(sequential.get("categoryDistribution"), parallel.get("categoryDistribution"),
+                        "category distribution at " + size);
+            checkEquals(sequential.get("stockDistribution"), parallel.get("stockDistribution"),
+                        "stock distribution at " + size);
+            System.out.printf("%,d items: sequential %.1f ms, parallel %.1f ms%n", size,
+                              best(items, false), best(items, true));
+        }
+    }
+
+    // Best of ROUNDS after as many warm-up runs.
+    private static double best(List<Item> items, boolean parallel) {
+        double best = Double.MAX_VALUE;
+        for (int round = 0; round < 2 * ROUNDS; round++) {
+            long start = System.nanoTime();
+            AnalyticsService.getInventoryAnalytics(items, parallel);
+            double millis = (System.nanoTime() - start) / 1e6;
+            if (round >= ROUNDS) {
+                best = Math.min(best, millis);
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,97 @@
+package com.sims.services;
+
+import static com.sims.Checks.*;
+
+import com.sims.models.Item;
+import com.sims.utils.FileManager;
+import com.sims.utils.MappedRecordStore;
+import java.io.File;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.*;
+
+// The list, parallel and snapshot analytics must report what the indexes
+// InventoryManager keeps report for the same items, including categories
+// that differ only in case and items without a category. Writes a snapshot
+// file under data/ in the working directory.
+public class AnalyticsTest {
+    private static final String[] CATEGORIES = {"Food", "food", "FOOD", "Tools", "tools", null, "", "Toys"};
+
+    public static void main(String[] args) throws IOException {
+        List<Item> items = generate(120_000, 1);
+        CategoryIndex index = new CategoryIndex();
+        InventoryStats stats = new InventoryStats();
+        for (Item item : items) {
+            index.put(item);
+            stats.put(item);
+        }
+
+        AnalyticsAccumulator sequential = items.stream().collect(AnalyticsAccumulator.collector());
+        AnalyticsAccumulator parallel = items.parallelStream().collect(AnalyticsAccumulator.collector());
+        for (AnalyticsAccumulator result : List.of(sequential, parallel)) {
+            checkEquals(index.getCounts(), result.getCategoryCounts(), "category counts");
+            checkValues(index.getValues(), result.getCategoryValues());
+            checkEquals(names(index.getTopByValue(5)), names(result.getTopValueCategories(5)), "top categories");
+            checkStats(stats, result.getStats());
+        }
+        // The dashboard's low-stock figure has never included negative quantities.
+        long lowInStock = items.stream()
+            .filter(item -> item.getQuantity() <= item.getLowStockThreshold() && item.getQuantity() > 0)
+            .count();
+        check(items.stream().anyMatch(item -> item.getQuantity() < 0), "no negative quantities generated");
+        checkEquals((int) lowInStock, stats.getLowInStockCount(), "dashboard low stock");
+        check(index.getCounts().containsKey(""), "null category not grouped under \"\"");
+        check(!index.getCounts().containsKey("food"), "case variants not merged");
+
+        new File("data").mkdirs();
+        FileManager.saveList(items, Item.CODEC, "data/analytics-test.dat");
+        try (MappedRecordStore<Item> snapshot = MappedRecordStore.open("data/analytics-test.dat", Item.CODEC)) {
+            Map<String, Object> fromSnapshot = AnalyticsService.getSnapshotAnalytics(snapshot);
+            Map<String, Object> fromList = AnalyticsService.getInventoryAnalytics(items, false);
+            checkEquals(fromList.get("categoryDistribution"), fromSnapshot.get("categoryDistribution"),
+                        "snapshot category distribution");
+            checkEquals(fromList.get("stockDistribution"), fromSnapshot.get("stockDistribution"),
+                        "snapshot stock distribution");
+        }
+        pass("AnalyticsTest");
+    }
+
+    static List<Item> generate(int count, long seed) {
+        Random random = new Random(seed);
+        List<Item> items = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String category = i < CATEGORIES.length ? CATEGORIES[i] : CATEGORIES[random.nextInt(CATEGORIES.length)];
+            items.add(new Item("ITM" + i, "BC" + i, LocalDate.of(2024, 1, 1), "Item " + i, category,
+                               random.nextInt(200) - 5, random.nextInt(100_000) / 100.0, "", random.nextInt(20),
+                               null));
+        }
+        return items;
+    }
+
+    private static List<String> names(List<Map.Entry<String, Double>> entries) {
+        List<String> names = new ArrayList<>();
+        for (Map.Entry<String, Double> entry : entries) {
+            names.add(entry.getKey());
+        }
+        return names;
+    }
+
+    // Sums in a different order, so equal up to rounding.
+    private static void checkValues(Map<String, Double> expected, Map<String, Double> actual) {
+        checkEquals(expected.keySet(), actual.keySet(), "value categories");
+        for (String category : expected.keySet()) {
+            double a = expected.get(category);
+            double b = actual.get(category);
+            check(Math.abs(a - b) <= 1e-9 * Math.max(1, Math.abs(a)), "value of " + category + ": " + a + " vs " + b);
+        }
+    }
+
+    private static void checkStats(InventoryStats expected, InventoryStats actual) {
+        checkEquals(expected.getCount(), actual.getCount(), "item count");
+        checkEquals(expected.getStockDistribution(), actual.getStockDistribution(), "stock distribution");
+        checkEquals(expected.getLowStockPercentage(), actual.getLowStockPercentage(), "low stock percentage");
+        checkEquals(expected.getLowInStockCount(), actual.getLowInStockCount(), "low in-stock count");
+        check(Math.abs(expected.getTotalValue() - actual.getTotalValue()) <= 1e-9 * Math.abs(expected.getTotalValue()),
+              "total value");
+    }
+}
@@ -0,0 +1,68 @@
+package com.sims.services;
+
+import static com.sims.Checks.*;
+
+import com.sims.models.Transaction;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+// Recovery and grouping edge cases of the audit store. Uses audit-test/
+// under the working directory.
+public class AuditStoreTest {
+    public static void main(String[] args) throws IOException {
+        File dir = new File("audit-test");
+        clear(dir);
+        LocalDateTime time = LocalDateTime.of(2026, 1, 1, 12, 0);
+        AuditStore store = new AuditStore(dir);
+        store.append(List.of(
+            new Transaction("T1", "alice", "ADD_ITEM", "I1", "a", time),
+            new Transaction("T2", null, "LOGIN", null, "b", time),
+            new Transaction("T3", "bob", null, null, "c", time.plusMinutes(1))));
+
+        // Transactions without a user or action are counted, not dropped.
+        Map<String, Long> byUser = store.countBy(new AuditStore.Query(), AuditStore.GroupBy.USER);
+        checkEquals(Map.of("alice", 1L, "bob", 1L, "(none)", 1L), byUser, "count by user");
+        Map<String, Long> byAction = store.countBy(new AuditStore.Query(), AuditStore.GroupBy.ACTION);
+        checkEquals(Map.of("ADD_ITEM", 1L, "LOGIN", 1L, "(none)", 1L), byAction, "count by action");
+
+        // Appending under the header's schema records no schema change.
+        checkEquals(0L, new File(dir, "schema.col").length(), "schema changes for an unchanged codec");
+
+        // A schema change written for records that never made it is dropped.
+        try (FileOutputStream out = new FileOutputStream(new File(dir, "schema.col"), true)) {
+            out.write(ByteBuffer.allocate(8).putInt(store.size() + 5).putInt(2).array());
+        }
+        store = new AuditStore(dir);
+        checkEquals(0L, new File(dir, "schema.col").length(), "schema changes after recovery");
+        checkEquals("alice", store.query(new AuditStore.Query().action("ADD_ITEM")).getTransactions().get(0).getUserId(),
+                    "record read back");
+
+        // A dictionary value torn by a crash is cut off, so later values keep
+        // their codes across restarts.
+        try (FileOutputStream out = new FileOutputStream(new File(dir, "users.dict"), true)) {
+            out.write(new byte[] {10, 'z', 'z'});
+        }
+        store = new AuditStore(dir);
+        store.append(List.of(new Transaction("T4", "carol", "DELETE_ITEM", "I1", "d", time.plusMinutes(2))));
+        store = new AuditStore(dir);
+        checkEquals(1L, store.count(new AuditStore.Query().user("carol")), "carol after restart");
+        checkEquals("carol", store.query(new AuditStore.Query().user("carol")).getTransactions().get(0).getUserId(),
+                    "carol's record");
+        checkEquals(4L, store.count(new AuditStore.Query()), "total");
+        pass("AuditStoreTest");
+    }
+
+    private static void clear(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+}
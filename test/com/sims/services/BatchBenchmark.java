@@ -0,0 +1,91 @@
+package com.sims.services;
+
+import static com.sims.Checks.*;
+
+import com.sims.models.Item;
+import java.io.File;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+// Rows per second for adding, updating and deleting a delivery through the
+// batch API against one addItem/updateItem/deleteItem call per row, each
+// timed through to the flush. Usage: BatchBenchmark [sizes...] (default
+// 10000 100000); run from an empty scratch directory.
+public class BatchBenchmark {
+    public static void main(String[] args) {
+        int[] sizes = args.length > 0 ? new int[args.length] : new int[] {10_000, 100_000};
+        for (int i = 0; i < args.length; i++) {
+            sizes[i] = Integer.parseInt(args[i]);
+        }
+        check(!new File("data").exists(), "run from an empty scratch directory; data/ already exists");
+
+        InventoryManager manager = new InventoryManager();
+        for (int size : sizes) {
+            List<Item> batchRows = generate("B" + size + "-", size, 0);
+            List<Item> batchUpdates = generate("B" + size + "-", size, 1);
+            List<String> batchIds = ids(batchRows);
+            long start = System.nanoTime();
+            check(manager.addItems(batchRows), "batch add rejected");
+            manager.flush();
+            long batchAdd = System.nanoTime() - start;
+            start = System.nanoTime();
+            check(manager.updateItems(batchUpdates), "batch update rejected");
+            manager.flush();
+            long batchUpdate = System.nanoTime() - start;
+            checkEquals(size, manager.getItem(batchIds.get(size - 1)).getQuantity(), "quantity after batch update");
+            start = System.nanoTime();
+            check(manager.deleteItems(batchIds), "batch delete rejected");
+            manager.flush();
+            long batchDelete = System.nanoTime() - start;
+            checkEquals(0, manager.getAllItems().size(), "item count after batch delete");
+
+            List<Item> singleRows = generate("S" + size + "-", size, 0);
+            List<Item> singleUpdates = generate("S" + size + "-", size, 1);
+            start = System.nanoTime();
+            for (Item item : singleRows) {
+                check(manager.addItem(item), "add rejected " + item.getId());
+            }
+            manager.flush();
+            long singleAdd = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (Item item : singleUpdates) {
+                check(manager.updateItem(item), "update rejected " + item.getId());
+            }
+            manager.flush();
+            long singleUpdate = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (Item item : singleRows) {
+                check(manager.deleteItem(item.getId()), "delete rejected " + item.getId());
+            }
+            manager.flush();
+            long singleDelete = System.nanoTime() - start;
+            checkEquals(0, manager.getAllItems().size(), "item count after single deletes");
+
+            System.out.printf("%,d rows: add %s, update %s, delete %s%n", size,
+                              rates(size, batchAdd, singleAdd), rates(size, batchUpdate, singleUpdate),
+                              rates(size, batchDelete, singleDelete));
+        }
+    }
+
+    private static List<Item> generate(String prefix, int count, int extra) {
+        List<Item> items = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            items.add(new Item(prefix + i, prefix + "BC" + i, LocalDate.of(2024, 1, 1), "Item " + i,
+                               "Category" + (i % 20), i + extra, 9.99, "", 10, null));
+        }
+        return items;
+    }
+
+    private static List<String> ids(List<Item> items) {
+        List<String> ids = new ArrayList<>(items.size());
+        for (Item item : items) {
+            ids.add(item.getId());
+        }
+        return ids;
+    }
+
+    private static String rates(int rows, long batch, long single) {
+        return String.format("batch %,.0f rows/s vs single %,.0f rows/s", rows / (batch / 1e9), rows / (single / 1e9));
+    }
+}
@@ -0,0 +1,40 @@
+package com.sims.services;
+
+import com.sims.models.Item;
+import java.io.File;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// Rows per second for the List<Item> export: the old printf formatter
+// against ExportUtils' row writer, on the same generated catalog.
+// Usage: ExportBenchmark [rows] [rounds]
+public class ExportBenchmark {
+    public static void main(String[] args) throws IOException {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        Random random = new Random(7);
+        List<Item> items = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            String name = i % 10 == 0 ? "Item, \"special\" " + i : "Item " + i;
+            double price = i % 3 == 0 ? random.nextInt(1_000_000) / 100.0 : random.nextDouble() * 1000;
+            items.add(new Item("ITM" + i, "BC" + i, LocalDate.of(2024, 1, 1), name, "Category" + (i % 20),
+                               random.nextInt(500), price, "Description " + i, 10,
+                               i % 4 == 0 ? LocalDate.of(2025, 1 + i % 12, 1 + i % 28) : null));
+        }
+        new File("exports").mkdirs();
+
+        for (int round = 1; round <= rounds; round++) {
+            long start = System.nanoTime();
+            ExportUtilsTest.baselineExport(items, new File("exports/bench-printf.csv"));
+            long printf = System.nanoTime() - start;
+            start = System.nanoTime();
+            ExportUtils.exportToCSV(items, "bench-writer.csv");
+            long writer = System.nanoTime() - start;
+            System.out.printf("round %d: printf %,.0f rows/s, row writer %,.0f rows/s%n", round,
+                              rows / (printf / 1e9), rows / (writer / 1e9));
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.sims.services;
+
+import static com.sims.Checks.*;
+
+import com.sims.models.Item;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+// Checks the List<Item> export against the printf formatter it replaced,
+// including prices %.2f has special output for. Writes to exports/ under
+// the working directory.
+public class ExportUtilsTest {
+    public static void main(String[] args) throws IOException {
+        List<Item> items = new ArrayList<>();
+        double[] prices = {0, 1, 0.005, 0.015, 2.675, -3.5, -0.001, -0.005, 1e15, 1e20, -1e20, -0.0, Double.MIN_VALUE,
+                           Double.MAX_VALUE, Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY};
+        for (double price : prices) {
+            items.add(item("P" + items.size(), "Priced", price, null));
+        }
+        items.add(item("Q1", "Comma, \"quoted\"\nname", 1.25, LocalDate.of(2030, 1, 31)));
+        items.add(item("Q2", null, 9.99, LocalDate.of(99999, 1, 1)));
+        // Both sides write the platform charset, whatever it is.
+        items.add(item("Q3", "Caf\u00e9 \u2615 \u00fcber", 4.5, null));
+        Random random = new Random(42);
+        for (int i = 0; i < 10_000; i++) {
+            items.add(item("R" + i, "Item " + i, (random.nextLong() % 10_000_000) / 1000.0, null));
+            items.add(item("S" + i, "Item " + i, (random.nextLong() % 100) / 100_000.0, null));
+        }
+
+        check(ExportUtils.exportToCSV(items, "export-test.csv"), "export failed");
+        byte[] actual = Files.readAllBytes(new File("exports/export-test.csv").toPath());
+        byte[] expected = Files.readAllBytes(baselineExport(items, new File("exports/export-baseline.csv")).toPath());
+        check(Arrays.equals(expected, actual), "export differs from the printf baseline");
+
+        String text = new String(actual);
+        check(text.contains(",NaN,"), "NaN price not written as NaN");
+        check(text.contains(",Infinity,"), "infinite price not written as Infinity");
+        check(text.contains(",-Infinity,"), "negative infinite price not written as -Infinity");
+        pass("ExportUtilsTest");
+    }
+
+    private static Item item(String id, String name, double price, LocalDate expiry) {
+        return new Item(id, "BC" + id, LocalDate.of(2024, 1, 1), name, "Cat", 3, price, "d", 1, expiry);
+    }
+
+    // The export as written before the row formatter was introduced.
+    static File baselineExport(List<Item> items, File file) throws IOException {
+        try (PrintWriter writer = new PrintWriter(new FileWriter(file))) {
+            writer.println("ID,Name,Category,Quantity,Price,Description,LowStockThreshold,Barcode,ExpiryDate");
+            writer.println(" ");
+            for (Item item : items) {
+                writer.printf("%s,%s,%s,%d,%.2f,%s,%d,%s,%s%n",
+                    escapeCSV(item.getId()),
+                    escapeCSV(item.getName()),
+                    escapeCSV(item.getCategory()),
+                    item.getQuantity(),
+                    item.getPrice(),
+                    escapeCSV(item.getDescription()),
+                    item.getLowStockThreshold(),
+                    escapeCSV(item.getBarcode()),
+                    item.getExpiryDate() != null ? item.getExpiryDate().toString() : "");
+            }
+        }
+        return file;
+    }
+
+    private static String escapeCSV(String value) {
+        if (value == null) return "";
+        if (value.contains(",") || value.contains("\"") || value.contains("\n")) {
+            return "\"" + value.replace("\"", "\"\"") + "\"";
+        }
+        return value;
+    }
+}
@@ -0,0 +1,62 @@
+package com.sims.services;
+
+import static com.sims.Checks.*;
+
+import com.sims.models.Item;
+import com.sims.utils.FileManager;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Save and load time and file size for items.dat: Java serialization, the
+// old format, against FileManager's binary codec format, on the same
+// generated catalog. Usage: FileFormatBenchmark [items] [rounds]
+public class FileFormatBenchmark {
+    private static final String SERIALIZED = "data/bench-serialized.dat";
+    private static final String BINARY = "data/bench-binary.dat";
+
+    @SuppressWarnings("unchecked")
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        List<Item> items = AnalyticsTest.generate(count, 5);
+        new File("data").mkdirs();
+
+        for (int round = 1; round <= rounds; round++) {
+            long start = System.nanoTime();
+            FileManager.saveData(new ArrayList<>(items), SERIALIZED);
+            long serializedSave = System.nanoTime() - start;
+            start = System.nanoTime();
+            List<Item> serialized = (List<Item>) FileManager.loadData(SERIALIZED);
+            long serializedLoad = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            FileManager.saveList(items, Item.CODEC, BINARY);
+            long binarySave = System.nanoTime() - start;
+            start = System.nanoTime();
+            List<Item> binary = FileManager.loadList(Item.CODEC, BINARY);
+            long binaryLoad = System.nanoTime() - start;
+
+            if (round == 1) {
+                checkSame(items, serialized, "serialized");
+                checkSame(items, binary, "binary");
+                System.out.printf("%,d items: serialized %,d bytes, binary %,d bytes%n", count,
+                                  new File(SERIALIZED).length(), new File(BINARY).length());
+            }
+            System.out.printf("round %d: serialized save %.1f ms, load %.1f ms; binary save %.1f ms, load %.1f ms%n",
+                              round, serializedSave / 1e6, serializedLoad / 1e6, binarySave / 1e6, binaryLoad / 1e6);
+        }
+    }
+
+    // Item has no equals, so compare the encoded form of each record.
+    private static void checkSame(List<Item> expected, List<Item> actual, String format) throws IOException {
+        checkEquals(expected.size(), actual.size(), format + " item count");
+        for (int i = 0; i < expected.size(); i++) {
+            check(Arrays.equals(FileManager.encode(Item.CODEC, expected.get(i)),
+                                FileManager.encode(Item.CODEC, actual.get(i))),
+                  format + " item " + i + " differs");
+        }
+    }
+}
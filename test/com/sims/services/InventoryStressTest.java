@@ -0,0 +1,134 @@
+package com.sims.services;
+
+import static com.sims.Checks.*;
+
+import com.sims.models.Item;
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Hammers one InventoryManager from many threads and checks no update was
+// lost: every thread tallies the stock changes that succeeded, and the final
+// quantities and reservations must equal the starting stock plus those
+// tallies, in memory and after reloading from disk. Other threads add
+// items and read meanwhile. Uses data/ in the working directory, which must
+// not already exist. Usage: InventoryStressTest [threads] [opsPerThread]
+public class InventoryStressTest {
+    private static final int HOT_ITEMS = 4;
+    private static final int INITIAL_QUANTITY = 1_000;
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int operations = args.length > 1 ? Integer.parseInt(args[1]) : 50_000;
+        check(!new File("data").exists(), "run from an empty scratch directory; data/ already exists");
+
+        InventoryManager manager = new InventoryManager();
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < HOT_ITEMS; i++) {
+            Item item = new Item("Hot " + i, "Stress", INITIAL_QUANTITY, 1.0, "", 10);
+            check(manager.addItem(item), "could not add " + item.getId());
+            ids.add(item.getId());
+        }
+
+        AtomicLong[] quantityDeltas = new AtomicLong[HOT_ITEMS];
+        AtomicLong[] reservedDeltas = new AtomicLong[HOT_ITEMS];
+        for (int i = 0; i < HOT_ITEMS; i++) {
+            quantityDeltas[i] = new AtomicLong();
+            reservedDeltas[i] = new AtomicLong();
+        }
+        Set<String> added = ConcurrentHashMap.newKeySet();
+        ExecutorService pool = Executors.newFixedThreadPool(threads + 2);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> workers = new ArrayList<>();
+        long begin = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            long seed = t;
+            workers.add(pool.submit(() -> {
+                start.await();
+                Random random = new Random(seed);
+                for (int op = 0; op < operations; op++) {
+                    int slot = random.nextInt(HOT_ITEMS);
+                    String id = ids.get(slot);
+                    int amount = 1 + random.nextInt(5);
+                    switch (random.nextInt(5)) {
+                        case 0 -> {
+                            manager.adjustQuantity(id, amount, "stress");
+                            quantityDeltas[slot].addAndGet(amount);
+                        }
+                        case 1 -> {
+                            try {
+                                manager.adjustQuantity(id, -amount, "stress");
+                                quantityDeltas[slot].addAndGet(-amount);
+                            } catch (IllegalStateException e) {
+                                // Not enough unreserved stock; nothing changed.
+                            }
+                        }
+                        case 2 -> {
+                            if (manager.reserve(id, amount, "stress")) {
+                                reservedDeltas[slot].addAndGet(amount);
+                            }
+                        }
+                        case 3 -> {
+                            if (manager.release(id, amount, "stress")) {
+                                reservedDeltas[slot].addAndGet(-amount);
+                            }
+                        }
+                        default -> {
+                            Item item = new Item("Added " + seed + "-" + op, "Stress", 1, 1.0, "", 0);
+                            check(manager.addItem(item), "could not add " + item.getId());
+                            added.add(item.getId());
+                        }
+                    }
+                }
+                return null;
+            }));
+        }
+        // Readers, checking that no one ever sees more reserved than stocked.
+        Future<?> reader = pool.submit(() -> {
+            start.await();
+            while (!Thread.currentThread().isInterrupted()) {
+                for (String id : ids) {
+                    Item item = manager.getItem(id);
+                    int reserved = item.getReserved();
+                    check(reserved >= 0, "negative reservation on " + id);
+                }
+                manager.getAllItems();
+                manager.getCategoryValues();
+            }
+            return null;
+        });
+
+        start.countDown();
+        for (Future<?> worker : workers) {
+            worker.get();
+        }
+        if (reader.isDone()) {
+            reader.get(); // rethrows a failed check
+        }
+        reader.cancel(true);
+        double seconds = (System.nanoTime() - begin) / 1e9;
+        pool.shutdown();
+
+        for (int i = 0; i < HOT_ITEMS; i++) {
+            Item item = manager.getItem(ids.get(i));
+            checkEquals(INITIAL_QUANTITY + quantityDeltas[i].get(), (long) item.getQuantity(), "quantity of " + item.getId());
+            checkEquals(reservedDeltas[i].get(), (long) item.getReserved(), "reserved of " + item.getId());
+            check(item.getReserved() <= item.getQuantity(), "over-reserved " + item.getId());
+        }
+        for (String id : added) {
+            check(manager.getItem(id) != null, "lost added item " + id);
+        }
+        checkEquals(HOT_ITEMS + added.size(), manager.getAllItems().size(), "item count");
+
+        manager.flush();
+        InventoryManager reloaded = new InventoryManager();
+        checkEquals(HOT_ITEMS + added.size(), reloaded.getAllItems().size(), "item count after reload");
+        for (int i = 0; i < HOT_ITEMS; i++) {
+            checkEquals(INITIAL_QUANTITY + quantityDeltas[i].get(), (long) reloaded.getItem(ids.get(i)).getQuantity(),
+                        "quantity of " + ids.get(i) + " after reload");
+        }
+        System.out.printf("%d threads x %,d operations in %.2f s%n", threads, operations, seconds);
+        pass("InventoryStressTest");
+    }
+}